@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Corpus is a schema bundled with the benchmarks (schema.xsd, the xsds it
+ * includes, a valid.xml and an invalid.xml), copied to a temporary directory
+ * so that it is read from disk like any other xsd.
+ * <p>
+ * Bundled sizes are "small" (51 elements, an include and a recursive type),
+ * "medium" (326 elements) and "large" (10244 elements, 8 levels deep, shared
+ * and recursive complex types). A corpus can also be written by a
+ * CorpusGenerator.
+ *
+ * @author samarita
+ */
+class Corpus {
+
+    /**
+     * Bundled corpus sizes, as used by the size parameter of the benchmarks
+     */
+    static final String SMALL = "small", MEDIUM = "medium", LARGE = "large";
+    private final Path directory;
+    private final String root;
+
+    private Corpus(Path directory, String root) {
+        this.directory = directory;
+        this.root = root;
+    }
+
+    /**
+     * Copies a bundled corpus to a temporary directory
+     *
+     * @param size Corpus size as a <code>String</code> ("small", "medium" or
+     * "large")
+     * @return Corpus as a <code>Corpus</code>
+     * @throws IOException If corpus cannot be copied
+     */
+    static Corpus extract(String size) throws IOException {
+        String[] files;
+        String root;
+        if (SMALL.equals(size)) {
+            files = new String[]{"schema.xsd", "common.xsd", "valid.xml", "invalid.xml"};
+            root = "Entity";
+        } else if (MEDIUM.equals(size) || LARGE.equals(size)) {
+            files = new String[]{"schema.xsd", "types.xsd", "valid.xml", "invalid.xml"};
+            root = "Catalogue";
+        } else {
+            throw new IllegalArgumentException("Unknown corpus size " + size);
+        }
+        Path directory = Files.createTempDirectory("schemareader-" + size);
+        for (String file : files) {
+            try (InputStream in = Corpus.class.getResourceAsStream(size + "/" + file)) {
+                Files.copy(in, directory.resolve(file));
+            }
+        }
+        return new Corpus(directory, root);
+    }
+
+    /**
+     * Writes a generated corpus to a temporary directory
+     *
+     * @param generator Generator as a <code>CorpusGenerator</code>
+     * @return Corpus as a <code>Corpus</code>
+     * @throws IOException If corpus cannot be written
+     */
+    static Corpus generate(CorpusGenerator generator) throws IOException {
+        Path directory = Files.createTempDirectory("schemareader-generated");
+        generator.generate(directory);
+        return new Corpus(directory, CorpusGenerator.ROOT);
+    }
+
+    /**
+     * Gets path of main xsd
+     *
+     * @return Xsd path as a <code>String</code>
+     */
+    String getXsd() {
+        return directory.resolve("schema.xsd").toString();
+    }
+
+    /**
+     * Gets root element name
+     *
+     * @return Root element name as a <code>String</code>
+     */
+    String getRoot() {
+        return root;
+    }
+
+    /**
+     * Gets an instance document
+     *
+     * @param valid If the valid document is needed <code>true</code>, else
+     * <code>false</code>
+     * @return Document path as a <code>Path</code>
+     */
+    Path getDocument(boolean valid) {
+        return directory.resolve(valid ? "valid.xml" : "invalid.xml");
+    }
+
+    /**
+     * Deletes the temporary directory
+     *
+     * @throws IOException If a file cannot be deleted
+     */
+    void delete() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,586 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * CorpusGenerator writes a synthetic schema and a valid and an invalid
+ * instance document of it, for scale and stress tests. The schema can be
+ * scaled along each axis that makes element trees expensive:
+ * <ul>
+ * <li>depth: levels of nested complex types</li>
+ * <li>fanout: children of each complex type (every other one is complex,
+ * down to the last level)</li>
+ * <li>sharedTypes: complex types per level, reused by all parents of that
+ * level (fewer types means more sharing)</li>
+ * <li>recursiveTypes: complex types with an optional child of the top type,
+ * starting from the last level</li>
+ * <li>choiceWidth: alternatives of the choice ending each complex type (0 for
+ * none)</li>
+ * <li>enumerations and patterns: facets of the enumeration and pattern simple
+ * types used by leaf elements</li>
+ * </ul>
+ * The instance repeats record elements until it reaches about instanceBytes,
+ * so it can range from KB to GB. It is streamed to disk and never held in
+ * memory. The invalid instance is the valid one with some leaf values
+ * replaced by values their type does not allow (errors of them).
+ * <p>
+ * Output is the same for the same seed and settings. Files written are
+ * schema.xsd (root element Corpus), types.xsd (simple types, included by
+ * schema.xsd), valid.xml, invalid.xml and corpus.properties (settings and
+ * counts).
+ *
+ * @author samarita
+ */
+public class CorpusGenerator {
+
+    /**
+     * Root element of generated schemas
+     */
+    public static final String ROOT = "Corpus";
+    private static final int TEXT_LENGTH = 32;
+    private long seed = 1;
+    private int depth = 4;
+    private int fanout = 4;
+    private int sharedTypes = 4;
+    private int recursiveTypes = 1;
+    private int choiceWidth = 2;
+    private int enumerations = 8;
+    private int patterns = 4;
+    private long instanceBytes = 64 * 1024;
+    private int errors = 10;
+
+    /**
+     * Leaf element types, each with a valid value and a value its type does
+     * not allow
+     */
+    private enum Leaf {
+
+        TEXT("TextType"), NUMBER("NumberType"), CODE("CodeType"), PATTERN("PatternType"), FLAG("xs:boolean"), DATE("xs:date");
+        final String type;
+
+        Leaf(String type) {
+            this.type = type;
+        }
+    }
+
+    private static class ComplexType {
+
+        final String name;
+        final List<Child> children = new ArrayList<Child>();
+        /**
+         * Leaves of an instance with every child once
+         */
+        int minLeaves;
+
+        ComplexType(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Child {
+
+        final String name;
+        final ComplexType complexType;
+        final Leaf leaf;
+        final boolean optional, repeated, recursive;
+
+        Child(String name, ComplexType complexType, Leaf leaf, boolean optional, boolean repeated, boolean recursive) {
+            this.name = name;
+            this.complexType = complexType;
+            this.leaf = leaf;
+            this.optional = optional;
+            this.repeated = repeated;
+            this.recursive = recursive;
+        }
+    }
+
+    /**
+     * Sets random seed
+     *
+     * @param seed Seed as a <code>long</code>
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets levels of nested complex types
+     *
+     * @param depth Depth as an <code>int</code> (at least 1)
+     */
+    public void setDepth(int depth) {
+        this.depth = atLeast(depth, 1, "depth");
+    }
+
+    /**
+     * Sets children of each complex type
+     *
+     * @param fanout Fan-out as an <code>int</code> (at least 1)
+     */
+    public void setFanout(int fanout) {
+        this.fanout = atLeast(fanout, 1, "fanout");
+    }
+
+    /**
+     * Sets complex types per level
+     *
+     * @param sharedTypes Types per level as an <code>int</code> (at least 1)
+     */
+    public void setSharedTypes(int sharedTypes) {
+        this.sharedTypes = atLeast(sharedTypes, 1, "sharedTypes");
+    }
+
+    /**
+     * Sets number of complex types with a recursive child
+     *
+     * @param recursiveTypes Recursive types as an <code>int</code>
+     */
+    public void setRecursiveTypes(int recursiveTypes) {
+        this.recursiveTypes = atLeast(recursiveTypes, 0, "recursiveTypes");
+    }
+
+    /**
+     * Sets alternatives of the choice of each complex type
+     *
+     * @param choiceWidth Alternatives as an <code>int</code> (0 for no
+     * choice)
+     */
+    public void setChoiceWidth(int choiceWidth) {
+        this.choiceWidth = atLeast(choiceWidth, 0, "choiceWidth");
+    }
+
+    /**
+     * Sets enumeration facets of the enumeration type
+     *
+     * @param enumerations Enumeration values as an <code>int</code> (at least
+     * 1)
+     */
+    public void setEnumerations(int enumerations) {
+        this.enumerations = atLeast(enumerations, 1, "enumerations");
+    }
+
+    /**
+     * Sets pattern facets of the pattern type
+     *
+     * @param patterns Patterns as an <code>int</code> (at least 1)
+     */
+    public void setPatterns(int patterns) {
+        this.patterns = atLeast(patterns, 1, "patterns");
+    }
+
+    /**
+     * Sets approximate size of instance documents
+     *
+     * @param instanceBytes Size in bytes as a <code>long</code> (at least one
+     * record is written)
+     */
+    public void setInstanceBytes(long instanceBytes) {
+        this.instanceBytes = instanceBytes;
+    }
+
+    /**
+     * Sets number of invalid values of the invalid instance
+     *
+     * @param errors Invalid values as an <code>int</code> (at least 1, at most
+     * one per leaf element)
+     */
+    public void setErrors(int errors) {
+        this.errors = atLeast(errors, 1, "errors");
+    }
+
+    private static int atLeast(int value, int min, String name) {
+        if (value < min) {
+            throw new IllegalArgumentException(name + " must be at least " + min);
+        }
+        return value;
+    }
+
+    /**
+     * Writes schema and instances to a directory
+     *
+     * @param directory Output directory as a <code>Path</code> (created if
+     * missing, files in it are replaced)
+     * @throws IOException If a file cannot be written
+     */
+    public void generate(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<List<ComplexType>> levels = new ArrayList<List<ComplexType>>();
+        for (int level = 0; level <= depth; level++) {
+            levels.add(new ArrayList<ComplexType>());
+        }
+        Random random = new Random(seed);
+        ComplexType top = createType(1, levels, random);
+        int recursive = 0;
+        for (int level = depth; level >= 1 && recursive < recursiveTypes; level--) {
+            for (ComplexType type : levels.get(level)) {
+                if (recursive == recursiveTypes) {
+                    break;
+                }
+                type.children.add(new Child("back", top, null, true, false, true));
+                recursive++;
+            }
+        }
+        int typeCount = 0;
+        for (List<ComplexType> types : levels) {
+            typeCount += types.size();
+        }
+        countLeaves(top);
+        writeSchema(directory.resolve("schema.xsd"), levels, top);
+        writeTypes(directory.resolve("types.xsd"));
+
+        //Records are written one by one, each from its own seed
+        Output measure = new Output(null, null);
+        writeRecord(measure, top, 0, null);
+        long records = Math.max(1, (instanceBytes + measure.length - 1) / measure.length);
+        HashMap<Long, Set<Integer>> invalidLeaves = new HashMap<Long, Set<Integer>>();
+        Random errorRandom = new Random(seed + 1);
+        int invalidValues = 0;
+        for (int i = 0; i < errors && invalidValues < records * top.minLeaves; i++) {
+            long record = i * records / errors;
+            Set<Integer> leaves = invalidLeaves.get(record);
+            if (leaves == null) {
+                leaves = new HashSet<Integer>();
+                invalidLeaves.put(record, leaves);
+            }
+            if (leaves.add(errorRandom.nextInt(top.minLeaves))) {
+                invalidValues++;
+            }
+        }
+        try (Writer valid = newWriter(directory.resolve("valid.xml")); Writer invalid = newWriter(directory.resolve("invalid.xml"))) {
+            Output out = new Output(valid, invalid);
+            out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<" + ROOT + ">\n");
+            for (long record = 0; record < records; record++) {
+                writeRecord(out, top, record, invalidLeaves.get(record));
+            }
+            out.append("</" + ROOT + ">\n");
+        }
+        try (Writer properties = newWriter(directory.resolve("corpus.properties"))) {
+            properties.write("seed=" + seed + "\ndepth=" + depth + "\nfanout=" + fanout + "\nsharedTypes=" + sharedTypes
+                    + "\nrecursiveTypes=" + recursive + "\nchoiceWidth=" + choiceWidth
+                    + "\nenumerations=" + enumerations + "\npatterns=" + patterns + "\ncomplexTypes=" + typeCount
+                    + "\ninstanceBytes=" + instanceBytes + "\nrecords=" + records + "\ninvalidValues=" + invalidValues + "\n");
+        }
+    }
+
+    private ComplexType createType(int level, List<List<ComplexType>> levels, Random random) {
+        ComplexType type = new ComplexType("Level" + level + "Type" + levels.get(level).size());
+        levels.get(level).add(type);
+        for (int i = 0; i < fanout; i++) {
+            boolean optional = random.nextInt(4) == 0;
+            boolean repeated = random.nextInt(4) == 0;
+            if (level < depth && i % 2 == 0) {
+                List<ComplexType> next = levels.get(level + 1);
+                ComplexType childType = next.size() < sharedTypes ? createType(level + 1, levels, random) : next.get(random.nextInt(next.size()));
+                type.children.add(new Child("c" + i, childType, null, optional, repeated, false));
+            } else {
+                Leaf leaf = Leaf.values()[(i + level) % Leaf.values().length];
+                type.children.add(new Child("f" + i, null, leaf, optional, repeated, false));
+            }
+        }
+        return type;
+    }
+
+    private int countLeaves(ComplexType type) {
+        if (type.minLeaves == 0) {
+            int leaves = choiceWidth > 0 ? 1 : 0;
+            for (Child child : type.children) {
+                if (child.leaf != null) {
+                    leaves++;
+                } else if (!child.recursive) {
+                    leaves += countLeaves(child.complexType);
+                }
+            }
+            type.minLeaves = leaves;
+        }
+        return type.minLeaves;
+    }
+
+    private void writeSchema(Path file, List<List<ComplexType>> levels, ComplexType top) throws IOException {
+        try (Writer out = newWriter(file)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" elementFormDefault=\"qualified\">\n");
+            out.write("  <xs:include schemaLocation=\"types.xsd\"/>\n");
+            out.write("  <xs:element name=\"" + ROOT + "\">\n    <xs:complexType>\n      <xs:sequence>\n");
+            out.write("        <xs:element name=\"record\" type=\"" + top.name + "\" maxOccurs=\"unbounded\"/>\n");
+            out.write("      </xs:sequence>\n    </xs:complexType>\n  </xs:element>\n");
+            for (List<ComplexType> types : levels) {
+                for (ComplexType type : types) {
+                    out.write("  <xs:complexType name=\"" + type.name + "\">\n    <xs:sequence>\n");
+                    for (Child child : type.children) {
+                        out.write("      <xs:element name=\"" + child.name + "\" type=\"" + (child.leaf != null ? child.leaf.type : child.complexType.name) + "\"");
+                        out.write((child.optional ? " minOccurs=\"0\"" : "") + (child.repeated ? " maxOccurs=\"unbounded\"" : "") + "/>\n");
+                    }
+                    if (choiceWidth > 0) {
+                        out.write("      <xs:choice>\n");
+                        for (int i = 0; i < choiceWidth; i++) {
+                            out.write("        <xs:element name=\"a" + i + "\" type=\"" + choiceLeaf(i).type + "\"/>\n");
+                        }
+                        out.write("      </xs:choice>\n");
+                    }
+                    out.write("    </xs:sequence>\n  </xs:complexType>\n");
+                }
+            }
+            out.write("</xs:schema>\n");
+        }
+    }
+
+    private void writeTypes(Path file) throws IOException {
+        try (Writer out = newWriter(file)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" elementFormDefault=\"qualified\">\n");
+            out.write("  <xs:simpleType name=\"TextType\">\n    <xs:restriction base=\"xs:string\">\n");
+            out.write("      <xs:maxLength value=\"" + TEXT_LENGTH + "\"/>\n    </xs:restriction>\n  </xs:simpleType>\n");
+            out.write("  <xs:simpleType name=\"NumberType\">\n    <xs:restriction base=\"xs:integer\">\n");
+            out.write("      <xs:minInclusive value=\"1000\"/>\n      <xs:maxInclusive value=\"2999\"/>\n    </xs:restriction>\n  </xs:simpleType>\n");
+            out.write("  <xs:simpleType name=\"CodeType\">\n    <xs:restriction base=\"xs:string\">\n");
+            for (int i = 0; i < enumerations; i++) {
+                out.write("      <xs:enumeration value=\"code" + i + "\"/>\n");
+            }
+            out.write("    </xs:restriction>\n  </xs:simpleType>\n");
+            out.write("  <xs:simpleType name=\"PatternType\">\n    <xs:restriction base=\"xs:string\">\n");
+            for (int i = 0; i < patterns; i++) {
+                out.write("      <xs:pattern value=\"p" + i + "-[0-9]{1,4}\"/>\n");
+            }
+            out.write("    </xs:restriction>\n  </xs:simpleType>\n");
+            out.write("</xs:schema>\n");
+        }
+    }
+
+    private static Leaf choiceLeaf(int alternative) {
+        return Leaf.values()[alternative % Leaf.values().length];
+    }
+
+    /**
+     * Writes a record, replacing the values of the given leaves (counted in
+     * document order, first occurence of each child only) in the invalid
+     * instance
+     */
+    private void writeRecord(Output out, ComplexType top, long record, Set<Integer> invalidLeaves) throws IOException {
+        Random random = new Random(seed * 31 + record);
+        out.leafIndex = 0;
+        out.invalidLeaves = invalidLeaves;
+        out.append("  <record>\n");
+        writeContent(out, top, "    ", random);
+        out.append("  </record>\n");
+    }
+
+    private void writeContent(Output out, ComplexType type, String indent, Random random) throws IOException {
+        for (Child child : type.children) {
+            if (child.recursive) {
+                continue; //Optional, and expanding it would repeat the whole record
+            }
+            int count = child.repeated ? 1 + random.nextInt(2) : 1;
+            for (int i = 0; i < count; i++) {
+                boolean counted = i == 0;
+                if (child.leaf != null) {
+                    writeLeaf(out, child.name, child.leaf, indent, random, counted);
+                } else {
+                    out.append(indent + "<" + child.name + ">\n");
+                    if (counted) {
+                        writeContent(out, child.complexType, indent + "  ", random);
+                    } else { //Leaves of repetitions are not counted
+                        int leafIndex = out.leafIndex;
+                        Set<Integer> invalidLeaves = out.invalidLeaves;
+                        out.invalidLeaves = null;
+                        writeContent(out, child.complexType, indent + "  ", random);
+                        out.leafIndex = leafIndex;
+                        out.invalidLeaves = invalidLeaves;
+                    }
+                    out.append(indent + "</" + child.name + ">\n");
+                }
+            }
+        }
+        if (choiceWidth > 0) {
+            int alternative = random.nextInt(choiceWidth);
+            writeLeaf(out, "a" + alternative, choiceLeaf(alternative), indent, random, true);
+        }
+    }
+
+    private void writeLeaf(Output out, String name, Leaf leaf, String indent, Random random, boolean counted) throws IOException {
+        String value, invalidValue;
+        switch (leaf) {
+            case TEXT:
+                value = "text" + random.nextInt(1000);
+                invalidValue = value + new String(new char[TEXT_LENGTH]).replace('\0', 'x');
+                break;
+            case NUMBER:
+                value = String.valueOf(1000 + random.nextInt(2000));
+                invalidValue = "999";
+                break;
+            case CODE:
+                value = "code" + random.nextInt(enumerations);
+                invalidValue = "code" + enumerations;
+                break;
+            case PATTERN:
+                value = "p" + random.nextInt(patterns) + "-" + random.nextInt(10000);
+                invalidValue = "p" + patterns + "-0";
+                break;
+            case FLAG:
+                value = random.nextBoolean() ? "true" : "false";
+                invalidValue = "maybe";
+                break;
+            default:
+                value = String.format(Locale.ROOT, "%04d-%02d-%02d", 1900 + random.nextInt(200), 1 + random.nextInt(12), 1 + random.nextInt(28));
+                invalidValue = "2015-13-45";
+                break;
+        }
+        boolean invalid = false;
+        if (counted) {
+            invalid = out.invalidLeaves != null && out.invalidLeaves.contains(out.leafIndex);
+            out.leafIndex++;
+        }
+        out.leaf(indent + "<" + name + ">", value, invalid ? invalidValue : value, "</" + name + ">\n");
+    }
+
+    private static Writer newWriter(Path file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Valid and invalid instance being written (nothing is written, only
+     * counted, if writers are null). Instances are ASCII, so length is in
+     * bytes.
+     */
+    private static class Output {
+
+        private final Writer valid, invalid;
+        long length;
+        int leafIndex;
+        Set<Integer> invalidLeaves;
+
+        Output(Writer valid, Writer invalid) {
+            this.valid = valid;
+            this.invalid = invalid;
+        }
+
+        void append(String text) throws IOException {
+            length += text.length();
+            if (valid != null) {
+                valid.write(text);
+                invalid.write(text);
+            }
+        }
+
+        void leaf(String start, String value, String invalidValue, String end) throws IOException {
+            length += start.length() + value.length() + end.length();
+            if (valid != null) {
+                valid.write(start);
+                valid.write(value);
+                valid.write(end);
+                invalid.write(start);
+                invalid.write(invalidValue);
+                invalid.write(end);
+            }
+        }
+    }
+
+    /**
+     * Writes a corpus from the command line
+     *
+     * @param args Output directory, then options as name value pairs: -seed,
+     * -depth, -fanout, -sharedTypes, -recursiveTypes, -choiceWidth,
+     * -enumerations, -patterns, -errors and -size (bytes, or with a k, m or g
+     * suffix)
+     * @throws IOException If a file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println("Usage: CorpusGenerator <directory> [-seed n] [-depth n] [-fanout n] [-sharedTypes n] [-recursiveTypes n]"
+                    + " [-choiceWidth n] [-enumerations n] [-patterns n] [-errors n] [-size n[k|m|g]]");
+            System.exit(1);
+        }
+        CorpusGenerator generator = new CorpusGenerator();
+        for (int i = 1; i < args.length; i += 2) {
+            String name = args[i], value = args[i + 1];
+            switch (name) {
+                case "-seed":
+                    generator.setSeed(Long.parseLong(value));
+                    break;
+                case "-depth":
+                    generator.setDepth(Integer.parseInt(value));
+                    break;
+                case "-fanout":
+                    generator.setFanout(Integer.parseInt(value));
+                    break;
+                case "-sharedTypes":
+                    generator.setSharedTypes(Integer.parseInt(value));
+                    break;
+                case "-recursiveTypes":
+                    generator.setRecursiveTypes(Integer.parseInt(value));
+                    break;
+                case "-choiceWidth":
+                    generator.setChoiceWidth(Integer.parseInt(value));
+                    break;
+                case "-enumerations":
+                    generator.setEnumerations(Integer.parseInt(value));
+                    break;
+                case "-patterns":
+                    generator.setPatterns(Integer.parseInt(value));
+                    break;
+                case "-errors":
+                    generator.setErrors(Integer.parseInt(value));
+                    break;
+                case "-size":
+                    generator.setInstanceBytes(parseSize(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + name);
+            }
+        }
+        generator.generate(Paths.get(args[0]));
+    }
+
+    private static long parseSize(String size) {
+        String lower = size.toLowerCase();
+        long unit = 1;
+        if (lower.endsWith("k")) {
+            unit = 1024;
+        } else if (lower.endsWith("m")) {
+            unit = 1024 * 1024;
+        } else if (lower.endsWith("g")) {
+            unit = 1024 * 1024 * 1024;
+        }
+        return Long.parseLong(unit == 1 ? lower : lower.substring(0, lower.length() - 1)) * unit;
+    }
+}
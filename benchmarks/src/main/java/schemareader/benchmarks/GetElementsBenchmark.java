@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import schemareader.Element;
+import schemareader.SchemaFile;
+
+/**
+ * getElements of a path at a given depth (1 is the root element, so the whole
+ * tree), on a parsed SchemaFile. The element at that depth with the largest
+ * subtree is used (the deepest elements if the corpus is not that deep).
+ *
+ * @author samarita
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GetElementsBenchmark {
+
+    @Param({Corpus.SMALL, Corpus.MEDIUM, Corpus.LARGE})
+    public String size;
+    @Param({"1", "3", "5"})
+    public int depth;
+    private Corpus corpus;
+    private SchemaFile schemaFile;
+    private String path;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = Corpus.extract(size);
+        schemaFile = new SchemaFile(corpus.getXsd());
+        ArrayList<Element> elements = schemaFile.getElements(corpus.getRoot());
+        int deepest = 0;
+        for (Element element : elements) {
+            deepest = Math.max(deepest, element.getDepth());
+        }
+        Element found = null;
+        int foundSize = 0;
+        for (Element element : elements) {
+            if (element.getDepth() == Math.min(depth, deepest)) {
+                int subtreeSize = schemaFile.getElements(element.getFullPath()).size();
+                if (subtreeSize > foundSize) {
+                    found = element;
+                    foundSize = subtreeSize;
+                }
+            }
+        }
+        path = found.getFullPath();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public ArrayList<Element> getElements() {
+        return schemaFile.getElements(path);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import schemareader.Element;
+import schemareader.SchemaFile;
+
+/**
+ * Parse, element tree and validation of generated corpora (see
+ * CorpusGenerator), scaled along depth, fan-out, choice width and facet
+ * counts. Other generator settings are the defaults, with a 1 MB instance.
+ *
+ * @author samarita
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScaleBenchmark {
+
+    @Param({"3", "5"})
+    public int depth;
+    @Param({"4", "8"})
+    public int fanout;
+    @Param({"2", "64"})
+    public int choiceWidth;
+    @Param({"8", "1024"})
+    public int facets;
+    @Param({"1"})
+    public long seed;
+    private Corpus corpus;
+    private SchemaFile schemaFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        CorpusGenerator generator = new CorpusGenerator();
+        generator.setSeed(seed);
+        generator.setDepth(depth);
+        generator.setFanout(fanout);
+        generator.setChoiceWidth(choiceWidth);
+        generator.setEnumerations(facets);
+        generator.setPatterns(facets);
+        generator.setInstanceBytes(1024 * 1024);
+        corpus = Corpus.generate(generator);
+        schemaFile = new SchemaFile(corpus.getXsd());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public SchemaFile parse() {
+        return new SchemaFile(corpus.getXsd());
+    }
+
+    @Benchmark
+    public ArrayList<Element> parseAndGetElements() {
+        return new SchemaFile(corpus.getXsd()).getElements(corpus.getRoot());
+    }
+
+    @Benchmark
+    public boolean validateValid() {
+        return schemaFile.validateAll(corpus.getDocument(true), 1).isValid();
+    }
+
+    @Benchmark
+    public boolean validateInvalid() {
+        return schemaFile.validateAll(corpus.getDocument(false), 100).isValid();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import schemareader.SchemaFile;
+
+/**
+ * Validation of the valid and the invalid document of a corpus, with the
+ * validation grammar already compiled.
+ *
+ * @author samarita
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidateBenchmark {
+
+    @Param({Corpus.SMALL, Corpus.MEDIUM, Corpus.LARGE})
+    public String size;
+    @Param({"true", "false"})
+    public boolean valid;
+    private Corpus corpus;
+    private SchemaFile schemaFile;
+    private String xml;
+    private File xmlFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = Corpus.extract(size);
+        schemaFile = new SchemaFile(corpus.getXsd());
+        xmlFile = corpus.getDocument(valid).toFile();
+        xml = new String(Files.readAllBytes(xmlFile.toPath()), StandardCharsets.UTF_8);
+        if (schemaFile.validate(xml) != valid) {
+            throw new IllegalStateException("Unexpected validation result for " + xmlFile);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public boolean validateString() {
+        return schemaFile.validate(xml);
+    }
+
+    @Benchmark
+    public String validateStringLang() {
+        return schemaFile.validate(xml, "en");
+    }
+
+    @Benchmark
+    public String validateFileLang() {
+        return schemaFile.validate(xmlFile, "en");
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * AttributeInfo describes an attribute of a complex Element, as declared in
+ * the xsd. It is immutable and shared by all elements of the same type.
+ *
+ * @author samarita
+ */
+public final class AttributeInfo {
+
+    /**
+     * Attribute use
+     */
+    public enum Use {
+
+        REQUIRED, OPTIONAL
+    }
+
+    private final String name;
+    private final String type;
+    private final Use use;
+    private final String fixedValue;
+    private final String defaultValue;
+
+    AttributeInfo(String name, String type, Use use, String fixedValue, String defaultValue) {
+        this.name = name;
+        this.type = type;
+        this.use = use;
+        this.fixedValue = fixedValue;
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Gets name
+     *
+     * @return Name as a <code>String</code>
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets type
+     *
+     * @return Type name as a <code>String</code> (null if anonymous)
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets use
+     *
+     * @return Use as a <code>Use</code>
+     */
+    public Use getUse() {
+        return use;
+    }
+
+    /**
+     * Checks if attribute is required
+     *
+     * @return If required <code>true</code>, else <code>false</code>
+     */
+    public boolean isRequired() {
+        return use == Use.REQUIRED;
+    }
+
+    /**
+     * Gets fixed value
+     *
+     * @return Fixed value as a <code>String</code> (null if none)
+     */
+    public String getFixedValue() {
+        return fixedValue;
+    }
+
+    /**
+     * Gets default value
+     *
+     * @return Default value as a <code>String</code> (null if none)
+     */
+    public String getDefaultValue() {
+        return defaultValue;
+    }
+
+    /**
+     * Gets value to use in xml templates: fixed value, else default value,
+     * else empty
+     *
+     * @return Value as a <code>String</code>
+     */
+    public String getTemplateValue() {
+        if (fixedValue != null) {
+            return fixedValue;
+        } else if (defaultValue != null) {
+            return defaultValue;
+        }
+        return "";
+    }
+
+    /**
+     * Gets attribute as "type, use, fixed, default" (format of
+     * Element.getAttributes values)
+     *
+     * @return Attribute as a <code>String</code>
+     */
+    @Override
+    public String toString() {
+        return type + ", " + (use == Use.REQUIRED ? "Required" : "Optional") + ", " + fixedValue + ", " + defaultValue;
+    }
+
+    /**
+     * Gets attributes as a map from name to "type, use, fixed, default"
+     */
+    static HashMap<String, String> toMap(List<AttributeInfo> attributes) {
+        HashMap<String, String> map = new HashMap<String, String>();
+        for (AttributeInfo attribute : attributes) {
+            map.put(attribute.name, attribute.toString());
+        }
+        return map;
+    }
+}
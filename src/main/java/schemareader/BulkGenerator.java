@@ -0,0 +1,240 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * BulkGenerator creates the xml templates of all repeatable paths (root
+ * elements included) in all modes and the labels file of every root element
+ * of a SchemaModel, splitting the work across a ForkJoinPool. The element tree
+ * of each root is built once, in parallel, and then shared by all tasks.
+ * Results are named after their relative file path:
+ * "templates/&lt;mode&gt;/&lt;xpath&gt;.xml" and "labels/&lt;root&gt;.xml".
+ *
+ * @author samarita
+ */
+class BulkGenerator {
+
+    static final String[] MODES = {"minimum", "medium", "maximum"};
+    /**
+     * Number of files created by a task without splitting further
+     */
+    private static final int THRESHOLD = 16;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final SchemaFile schemaFile;
+    private final SchemaModel model;
+    private final String lang;
+    private final Output output;
+
+    BulkGenerator(SchemaFile schemaFile, SchemaModel model, String lang, Output output) {
+        this.schemaFile = schemaFile;
+        this.model = model;
+        this.lang = lang;
+        this.output = output;
+    }
+
+    /**
+     * Creates all files
+     *
+     * @param parallelism Number of worker threads as an <code>int</code>
+     * @throws IOException If output fails
+     */
+    void run(int parallelism) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            List<String> roots = model.getRootNames();
+            List<List<String>> paths = new ArrayList<List<String>>();
+            for (int i = 0; i < roots.size(); i++) {
+                paths.add(null);
+            }
+            pool.invoke(new RootTask(roots, paths, 0, roots.size()));
+
+            ArrayList<String[]> jobs = new ArrayList<String[]>(); //{root, xpath} (xpath null for labels)
+            for (int i = 0; i < roots.size(); i++) {
+                jobs.add(new String[]{roots.get(i), null});
+                for (String path : paths.get(i)) {
+                    jobs.add(new String[]{roots.get(i), path});
+                }
+            }
+            pool.invoke(new FileTask(jobs, 0, jobs.size()));
+        } catch (RuntimeException ex) {
+            //The pool may wrap the exception of a worker thread again
+            for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+                if (cause instanceof OutputException) {
+                    throw (IOException) cause.getCause();
+                }
+            }
+            throw ex;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void createFiles(String root, String xpath) throws IOException {
+        if (xpath == null) {
+            output.put("labels/" + root + ".xml", schemaFile.createLabelsAndLinksFile(model, root, root, lang));
+        } else {
+            for (String mode : MODES) {
+                output.put("templates/" + mode + "/" + xpath + ".xml", schemaFile.createTemplate(model, xpath, mode));
+            }
+        }
+    }
+
+    /**
+     * Builds the element trees of a range of root elements and keeps their
+     * repeatable paths
+     */
+    private class RootTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final List<String> roots;
+        private final List<List<String>> paths;
+        private final int start, end;
+
+        RootTask(List<String> roots, List<List<String>> paths, int start, int end) {
+            this.roots = roots;
+            this.paths = paths;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RootTask(roots, paths, start, middle), new RootTask(roots, paths, middle, end));
+                return;
+            }
+            LinkedHashSet<String> repeatable = new LinkedHashSet<String>(); //A path may appear more than once
+            ArrayList<Element> elements = model.getElements(roots.get(start));
+            if (elements != null) {
+                for (Element el : elements) {
+                    if (el.getParent() == null || el.getMaxOccurs() == -1 || el.getMaxOccurs() > 1) {
+                        repeatable.add(el.getFullPath());
+                    }
+                }
+            }
+            paths.set(start, new ArrayList<String>(repeatable));
+        }
+    }
+
+    /**
+     * Creates the files of a range of jobs
+     */
+    private class FileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final List<String[]> jobs;
+        private final int start, end;
+
+        FileTask(List<String[]> jobs, int start, int end) {
+            this.jobs = jobs;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > THRESHOLD) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new FileTask(jobs, start, middle), new FileTask(jobs, middle, end));
+                return;
+            }
+            try {
+                for (int i = start; i < end; i++) {
+                    createFiles(jobs.get(i)[0], jobs.get(i)[1]);
+                }
+            } catch (IOException ex) {
+                throw new OutputException(ex);
+            }
+        }
+    }
+
+    /**
+     * Carries an IOException of a task out of the pool
+     */
+    private static class OutputException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        OutputException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Where created files go. Called by several threads at once.
+     */
+    interface Output {
+
+        void put(String name, String content) throws IOException;
+    }
+
+    /**
+     * Keeps created files in a map
+     */
+    static class MapOutput implements Output {
+
+        final Map<String, String> files = new ConcurrentHashMap<String, String>();
+
+        @Override
+        public void put(String name, String content) {
+            files.put(name, content);
+        }
+    }
+
+    /**
+     * Writes created files (UTF-8) below a directory
+     */
+    static class DirectoryOutput implements Output {
+
+        private final Path directory;
+
+        DirectoryOutput(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public void put(String name, String content) throws IOException {
+            Path file = directory.resolve(name);
+            Files.createDirectories(file.getParent());
+            Files.write(file, content.getBytes(UTF8));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+/**
+ * CacheStats is a snapshot of the counters of a SchemaFile cache, taken when
+ * it is requested.
+ *
+ * @author samarita
+ */
+public class CacheStats {
+
+    private final long hits, misses, evictions;
+    private final int size, maximumSize;
+
+    CacheStats(long hits, long misses, long evictions, int size, int maximumSize) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Gets number of lookups served from the cache
+     *
+     * @return Hits as a <code>long</code>
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets number of lookups not found in the cache
+     *
+     * @return Misses as a <code>long</code>
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets number of entries dropped to keep the cache within its size
+     *
+     * @return Evictions as a <code>long</code>
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets number of cached entries
+     *
+     * @return Size as an <code>int</code>
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets maximum number of cached entries
+     *
+     * @return Maximum size as an <code>int</code>
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Gets ratio of hits to lookups
+     *
+     * @return Hit rate as a <code>double</code> (0 if there were no lookups)
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size + "/" + maximumSize;
+    }
+}
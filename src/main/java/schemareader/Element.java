@@ -29,30 +29,52 @@ package schemareader;
 
 import com.sun.xml.xsom.XSElementDecl;
 import java.math.BigInteger;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 
 /**
  * Element is a convenience class used for XML elements so that you do not have
  * to learn XSOM API.
+ * <p>
+ * Elements of a schema tree are kept compact, since a SchemaFile holds one per
+ * particle occurence: an Element points to its parent and its path is built
+ * only when asked for, names are interned, depth and occurences are ints, and
+ * model groups and attribute and restriction descriptors (empty ones
+ * included) are shared by all elements of the same type. An element takes about 64 bytes on a 64-bit
+ * JVM with compressed references, besides the shared strings and
+ * descriptors.
  *
  * @author samarita
  */
 public class Element {
 
-    XSElementDecl elem;
-    int minOccurs, maxOccurs;
-    HashMap attributes = new HashMap();
-    HashMap restrictions = new HashMap();
-    String fullPath, name;
-    String type;
-    String subtree;
-    boolean isComplex = false;
-    boolean isSimple = false;
-    boolean isDummy = false;
-    String info;
-    int depth;
+    private static final int COMPLEX = 1, SIMPLE = 2, OPTIONAL = 4, RECURSIVE = 8, ALTERNATIVE = 16;
+    /**
+     * Flags used by the labels file: path contains "/admin", vocabulary,
+     * type and facet attributes
+     */
+    private static final int ADMIN = 32, VOCABULARY = 64, VALUE_FROM = 128, FACET = 256;
+    private static final int MODEL_FLAGS = COMPLEX | SIMPLE | OPTIONAL | RECURSIVE | ALTERNATIVE;
+    final Element parent;
+    /**
+     * Path of parent, for elements without a parent Element (null if root)
+     */
+    private final String parentPath;
+    final String name;
+    final String type;
+    final int minOccurs, maxOccurs;
+    final int depth;
+    private short flags;
+    /**
+     * Shared by the elements of the same type, only copies are handed out
+     */
+    Map<String, String> attributes = Collections.emptyMap();
+    List<AttributeInfo> attributeInfos = Collections.emptyList();
+    Restrictions restrictionInfo = Restrictions.NONE;
+    private ModelGroup group;
 
     /**
      * Default Element constructor
@@ -63,21 +85,108 @@ public class Element {
      * @param maxOccurs Maximum occurences as a <code>BigInteger</code>
      */
     public Element(XSElementDecl element, String path, BigInteger minOccurs, BigInteger maxOccurs) {
+        this(element, null, path.contains("/") ? path.substring(0, path.lastIndexOf("/")) : null,
+                path.substring(path.lastIndexOf("/") + 1), minOccurs, maxOccurs);
+    }
+
+    /**
+     * Element constructor, for an element below another Element
+     *
+     * @param element Element as a <code>XSElementDecl</code>
+     * @param parent Parent element as an <code>Element</code>
+     * @param group Model group the element is in as a <code>ModelGroup</code>
+     * @param minOccurs Minimum occurences as a <code>BigInteger</code>
+     * @param maxOccurs Maximum occurences as a <code>BigInteger</code>
+     */
+    Element(XSElementDecl element, Element parent, ModelGroup group, boolean alternative, BigInteger minOccurs, BigInteger maxOccurs) {
+        this(element, parent, null, element.getName(), minOccurs, maxOccurs);
+        setGroup(group, alternative);
+    }
 
-        this.name = path.substring(path.lastIndexOf("/") + 1, path.length());
+    private Element(XSElementDecl element, Element parent, String parentPath, String name, BigInteger minOccurs, BigInteger maxOccurs) {
+        this.parent = parent;
+        this.parentPath = parentPath;
+        this.name = name.intern();
         String type = element.getType().getName();
 
         if (type == null) {
-            this.type = element.getType().getBaseType().getName();
+            type = element.getType().getBaseType().getName();
+        }
+        this.type = type == null ? null : type.intern();
+        this.minOccurs = minOccurs.intValue();
+        this.maxOccurs = maxOccurs.intValue();
+        if (parent != null) {
+            this.depth = parent.depth + 1;
         } else {
+            this.depth = parentPath == null ? 1 : StringUtils.countMatches(parentPath, "/") + 2;
+        }
+        this.flags = (short) (element.getType().isComplexType() ? COMPLEX : SIMPLE);
+        if (this.minOccurs == 0) {
+            this.flags |= OPTIONAL;
+        }
+        if (parent != null ? parent.isInAdminPart() || this.name.startsWith("admin") : parentPath != null && (parentPath + "/" + this.name).contains("/admin")) {
+            this.flags |= ADMIN;
+        }
+    }
 
-            this.type = type;
+    /**
+     * Copies an Element below another parent. Descriptors and model group are
+     * shared.
+     *
+     * @param element Element to copy as an <code>Element</code>
+     * @param parent Parent element as an <code>Element</code>
+     */
+    Element(Element element, Element parent) {
+        this.parent = parent;
+        this.parentPath = null;
+        this.name = element.name;
+        this.type = element.type;
+        this.minOccurs = element.minOccurs;
+        this.maxOccurs = element.maxOccurs;
+        this.depth = parent.depth + 1;
+        this.flags = (short) (element.flags & ~ADMIN);
+        if (parent.isInAdminPart() || this.name.startsWith("admin")) {
+            this.flags |= ADMIN;
+        }
+        this.attributes = element.attributes;
+        this.attributeInfos = element.attributeInfos;
+        this.restrictionInfo = element.restrictionInfo;
+        this.group = element.group;
+    }
 
+    /**
+     * Element constructor, for an element read from a model snapshot
+     *
+     * @param parent Parent element as an <code>Element</code> (null if first
+     * element of a tree)
+     * @param name Name as a <code>String</code>
+     * @param type Type as a <code>String</code>
+     * @param minOccurs Minimum occurences as an <code>int</code>
+     * @param maxOccurs Maximum occurences as an <code>int</code>
+     * @param flags Flags as returned by getModelFlags
+     * @param group Model group the element is in as a <code>ModelGroup</code>
+     */
+    Element(Element parent, String name, String type, int minOccurs, int maxOccurs, int flags, ModelGroup group) {
+        this.parent = parent;
+        this.parentPath = null;
+        this.name = name.intern();
+        this.type = type == null ? null : type.intern();
+        this.minOccurs = minOccurs;
+        this.maxOccurs = maxOccurs;
+        this.depth = parent == null ? 1 : parent.depth + 1;
+        this.flags = (short) (flags & MODEL_FLAGS);
+        if (parent != null && (parent.isInAdminPart() || this.name.startsWith("admin"))) {
+            this.flags |= ADMIN;
         }
-        this.fullPath = path;
-        this.minOccurs = minOccurs.intValue();
-        this.maxOccurs = maxOccurs.intValue();
+        this.group = group;
+    }
 
+    /**
+     * Gets flags that are not derived from path or attributes (kind,
+     * optionality, recursion, choice branch)
+     */
+    int getModelFlags() {
+        return flags & MODEL_FLAGS;
     }
 
     /**
@@ -104,37 +213,65 @@ public class Element {
      * @return Depth as a <code>int</code>
      */
     public int getDepth() {
-        return StringUtils.countMatches(this.fullPath, "/") + 1;
+        return depth;
     }
 
     /**
-     * Dummy constructor
+     * Gets parent
      *
-     * @param info
+     * @return Parent as an <code>Element</code> (null if Element is the first
+     * element of a tree)
      */
-    public Element(String info) {
-        this.isDummy = true;
-        this.info = info;
+    public Element getParent() {
+        return parent;
+    }
 
+    /**
+     * Sets model group, updating optionality
+     *
+     * @param group Model group as a <code>ModelGroup</code>
+     * @param alternative If Element is in a choice branch other than the first
+     * <code>true</code>, else <code>false</code>
+     */
+    final void setGroup(ModelGroup group, boolean alternative) {
+        this.group = group;
+        if (this.minOccurs == 0 || (group != null && group.isOptional())) {
+            this.flags |= OPTIONAL;
+        }
+        if (alternative) {
+            this.flags |= ALTERNATIVE;
+        }
     }
 
     /**
-     * Sets info
+     * Gets model group Element is in
      *
-     * @param info Info to set as a <code>String</code>
+     * @return Model group as a <code>ModelGroup</code> (null if none, e.g. a
+     * root element)
      */
-    public void setInfo(String info) {
-        this.info = info;
+    public ModelGroup getGroup() {
+        return this.group;
+    }
 
+    /**
+     * Checks if Element is in a choice branch other than the first one (xml
+     * templates keep only the first branch of a choice)
+     *
+     * @return If in another choice branch <code>true</code>, else
+     * <code>false</code>
+     */
+    public boolean isChoiceAlternative() {
+        return (flags & ALTERNATIVE) != 0;
     }
 
     /**
-     * Gets info
+     * Gets info of the model group Element is in
      *
-     * @return Info as a <code>String</code>
+     * @return Info as a <code>String</code> (e.g. "Choice_0_1", null if no
+     * group)
      */
     public String getInfo() {
-        return this.info;
+        return this.group == null ? null : this.group.toString();
 
     }
 
@@ -143,29 +280,12 @@ public class Element {
         StringBuilder output = new StringBuilder();
         output = output.append("<").append(this.name);
 
-        if (this.attributes.isEmpty()) {
-            output = output.append(">");
-        } else {
-            Set<String> attrs = this.attributes.keySet();
-            for (String attr : attrs) {
-                String attrFeaturesAsString = (String) this.attributes.get(attr);
-                String[] attrFeatures = attrFeaturesAsString.split(", ");
-                String attrType = attrFeatures[0];
-                String attrUse = attrFeatures[1];
-                String attrFixed = attrFeatures[2];
-                String attrDefault = attrFeatures[3];
-                String attrValue = "";
-                if (attrUse.contains("Required")) {
-                    if (!attrFixed.equals("null")) {
-                        attrValue = attrFixed;
-                    } else if (!attrDefault.equals("null")) {
-                        attrValue = attrDefault;
-                    }
-                    output = output.append(" ").append(attr).append("='").append(attrValue).append("'");
-                }
+        for (AttributeInfo attr : this.attributeInfos) {
+            if (attr.isRequired()) {
+                output = output.append(" ").append(attr.getName()).append("='").append(attr.getTemplateValue()).append("'");
             }
-            output = output.append(">");
         }
+        output = output.append(">");
         output = output.append("</").append(this.name).append(">");
 
         return output.toString();
@@ -174,45 +294,149 @@ public class Element {
     /**
      * Gets attributes
      *
-     * @return Attribute names as a <code>HashMap</code>
+     * @return Attribute names (mapped to "type, use, fixed, default") as a
+     * <code>HashMap</code> (a copy, changes are not kept)
      */
-    public HashMap getAttributes() {
-        return attributes;
+    public HashMap<String, String> getAttributes() {
+        return new HashMap<String, String>(attributes);
+    }
+
+    /**
+     * Gets attribute descriptors
+     *
+     * @return Attributes as an unmodifiable <code>List</code>
+     */
+    public List<AttributeInfo> getAttributeInfos() {
+        return attributeInfos;
+    }
+
+    /**
+     * Gets attribute descriptor
+     *
+     * @param name Attribute name as a <code>String</code>
+     * @return Attribute as an <code>AttributeInfo</code> (null if Element has
+     * no such attribute)
+     */
+    public AttributeInfo getAttribute(String name) {
+        for (AttributeInfo attr : attributeInfos) {
+            if (attr.getName().equals(name)) {
+                return attr;
+            }
+        }
+        return null;
     }
 
     /**
      * Gets restrictions (xsd enumerations, facets, patterns etc.)
      *
-     * @return Restrictions as a <code>HashMap</code>
+     * @return Restrictions as a <code>HashMap</code> (a copy, changes are not
+     * kept)
+     */
+    public HashMap<String, String> getRestrictions() {
+        return new HashMap<String, String>(restrictionInfo.asMap());
+    }
+
+    /**
+     * Gets restrictions descriptor
+     *
+     * @return Restrictions as a <code>Restrictions</code> (empty if none)
      */
-    public HashMap getRestrictions() {
-        return restrictions;
+    public Restrictions getRestrictionInfo() {
+        return restrictionInfo;
     }
 
-    void setAttributes(HashMap attributes) {
+    void setAttributes(List<AttributeInfo> attributeInfos, Map<String, String> attributes) {
+        this.attributeInfos = attributeInfos;
         this.attributes = attributes;
+        this.flags &= ~(VOCABULARY | VALUE_FROM | FACET);
+        if (getAttribute("ics_vocabulary") != null || getAttribute("sps_vocabulary") != null) {
+            this.flags |= VOCABULARY;
+        }
+        if (getAttribute("ics_type") != null || getAttribute("sps_type") != null) {
+            this.flags |= VALUE_FROM;
+        }
+        if (getAttribute("sps_facet") != null) {
+            this.flags |= FACET;
+        }
+    }
+
+    /**
+     * Checks if full path contains "/admin" (the admin part of an entity)
+     */
+    boolean isInAdminPart() {
+        return (flags & ADMIN) != 0;
+    }
+
+    /**
+     * Checks if Element has an ics_vocabulary or sps_vocabulary attribute
+     */
+    boolean hasVocabulary() {
+        return (flags & VOCABULARY) != 0;
+    }
+
+    /**
+     * Checks if Element has an ics_type or sps_type attribute
+     */
+    boolean hasValueFrom() {
+        return (flags & VALUE_FROM) != 0;
+    }
+
+    /**
+     * Checks if Element has an sps_facet attribute
+     */
+    boolean hasFacet() {
+        return (flags & FACET) != 0;
     }
 
-    void setRestrictions(HashMap restrictions) {
-        this.restrictions = restrictions;
+    void setRestrictions(Restrictions restrictions) {
+        this.restrictionInfo = restrictions;
     }
 
     /**
-     * Gets full path
+     * Gets full path, built from the parent elements
      *
      * @return Path as a <code>String</code>
      */
     public String getFullPath() {
-        return fullPath;
+        if (parent == null) {
+            return parentPath == null ? name : parentPath + "/" + name;
+        }
+        StringBuilder path = new StringBuilder();
+        appendPath(path);
+        return path.toString();
+    }
+
+    /**
+     * Checks if full path contains some text, without building the path
+     */
+    boolean pathContains(String text) {
+        for (Element el = this; el != null; el = el.parent) {
+            if (el.name.contains(text) || (el.parent == null && el.parentPath != null && el.parentPath.contains(text))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendPath(StringBuilder path) {
+        if (parent != null) {
+            parent.appendPath(path);
+            path.append("/");
+        } else if (parentPath != null) {
+            path.append(parentPath).append("/");
+        }
+        path.append(name);
     }
 
     /**
      * Gets subtree with Element as root
      *
-     * @return Subtree as a <code>String</code>
+     * @return Subtree as a <code>String</code> (always null)
+     * @deprecated Never set, use SchemaFile.createXMLSubtree
      */
+    @Deprecated
     public String getSubtree() {
-        return subtree;
+        return null;
     }
 
     /**
@@ -221,7 +445,7 @@ public class Element {
      * @return If complex <code>true</code>, else <code>false</code>
      */
     public boolean isComplexType() {
-        return this.isComplex;
+        return (flags & COMPLEX) != 0;
     }
 
     /**
@@ -230,7 +454,25 @@ public class Element {
      * @return If simple <code>true</code>, else <code>false</code>
      */
     public boolean isSimpleType() {
-        return this.isSimple;
+        return (flags & SIMPLE) != 0;
+    }
+
+    /**
+     * Checks if Element is a recursive occurence of an element above it, kept
+     * but not expanded
+     *
+     * @return If recursive <code>true</code>, else <code>false</code>
+     */
+    public boolean isRecursive() {
+        return (flags & RECURSIVE) != 0;
+    }
+
+    void setRecursive(boolean recursive) {
+        if (recursive) {
+            flags |= RECURSIVE;
+        } else {
+            flags &= ~RECURSIVE;
+        }
     }
 
     /**
@@ -243,26 +485,13 @@ public class Element {
     }
 
     /**
-     * Checks if Element is optional
+     * Checks if Element is optional, that is if it or a model group it is in
+     * has minimum occurences 0
      *
      * @return If optional <code>true</code>, else <code>false</code>
      */
     public boolean isOptional() {
-        int elemMinOccurs = this.minOccurs;
-        String parentInfo = this.info;
-        if (parentInfo != null) {
-            int parentMinOccurs = Integer.parseInt(parentInfo.split("_")[1]);
-            if (parentMinOccurs == 0) {
-                return true;
-            }
-        }
-
-        if (elemMinOccurs == 0) {
-            return true;
-        } else {
-            return false;
-        }
-
+        return (flags & OPTIONAL) != 0;
     }
 
     /**
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.util.ArrayList;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.Locator2;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * SAX filter that keeps the names of the currently open elements, so that
+ * validation errors can report the element path they occured at. Elements are
+ * pushed before and popped after the downstream handler sees them.
+ *
+ * @author samarita
+ */
+class ElementPathTracker extends XMLFilterImpl {
+
+    private final ArrayList<String> openElements = new ArrayList<String>();
+    private Locator locator;
+
+    void reset() {
+        openElements.clear();
+        locator = null;
+    }
+
+    /**
+     * Gets encoding of the xml being parsed
+     *
+     * @return Encoding as a <code>String</code> (null if unknown)
+     */
+    String getEncoding() {
+        if (locator instanceof Locator2) {
+            return ((Locator2) locator).getEncoding();
+        }
+        return null;
+    }
+
+    /**
+     * Gets path of the currently open element
+     *
+     * @return Path as a <code>String</code> (e.g. "root/a/b")
+     */
+    String getPath() {
+        StringBuilder path = new StringBuilder();
+        for (String name : openElements) {
+            if (path.length() > 0) {
+                path.append("/");
+            }
+            path.append(name);
+        }
+        return path.toString();
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        this.locator = locator;
+        super.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        openElements.clear();
+        super.startDocument();
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        openElements.add(localName.length() > 0 ? localName : qName);
+        super.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        super.endElement(uri, localName, qName);
+        if (!openElements.isEmpty()) {
+            openElements.remove(openElements.size() - 1);
+        }
+    }
+}
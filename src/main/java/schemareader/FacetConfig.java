@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+/**
+ * FacetConfig is the THEMAS thesaurus a LabelsAndLinksFile points facet
+ * elements (elements with an sps_facet attribute) to.
+ *
+ * @author samarita
+ */
+public class FacetConfig {
+
+    /**
+     * Thesaurus used when none is given
+     */
+    public static final FacetConfig DEFAULT = new FacetConfig("ExternalReader", "http://139.91.183.97:8080/THEMAS/", "TESTDATA");
+    private final String username;
+    private final String themasUrl;
+    private final String thesaurusName;
+
+    /**
+     * FacetConfig constructor
+     *
+     * @param username THEMAS user name as a <code>String</code>
+     * @param themasUrl THEMAS url as a <code>String</code>
+     * @param thesaurusName Thesaurus name as a <code>String</code>
+     */
+    public FacetConfig(String username, String themasUrl, String thesaurusName) {
+        this.username = username;
+        this.themasUrl = themasUrl;
+        this.thesaurusName = thesaurusName;
+    }
+
+    /**
+     * Gets THEMAS user name
+     *
+     * @return User name as a <code>String</code>
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Gets THEMAS url
+     *
+     * @return Url as a <code>String</code>
+     */
+    public String getThemasUrl() {
+        return themasUrl;
+    }
+
+    /**
+     * Gets thesaurus name
+     *
+     * @return Thesaurus name as a <code>String</code>
+     */
+    public String getThesaurusName() {
+        return thesaurusName;
+    }
+}
@@ -30,6 +30,7 @@ package schemareader;
 import com.sun.xml.xsom.XSAttributeDecl;
 import com.sun.xml.xsom.XSAttributeUse;
 import com.sun.xml.xsom.XSComplexType;
+import com.sun.xml.xsom.XSElementDecl;
 import com.sun.xml.xsom.XSFacet;
 import com.sun.xml.xsom.XSModelGroup;
 import com.sun.xml.xsom.XSModelGroupDecl;
@@ -38,120 +39,240 @@ import com.sun.xml.xsom.XSRestrictionSimpleType;
 import com.sun.xml.xsom.XSSimpleType;
 import com.sun.xml.xsom.XSTerm;
 import com.sun.xml.xsom.XSType;
+import com.sun.xml.xsom.XmlString;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import schemareader.Visitor.SimpleTypeRestriction;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
- * Handlers class
+ * Handlers class. Walks the XSOM graph from a root element, descending only
+ * along the segments of the requested path and then expanding the subtree of
+ * the requested element. The current path is kept in a segment stack, and each
+ * element gets the model group it is in when it is created.
+ * <p>
+ * Recursive types are detected with the element names and types of the
+ * current path only, so a type reused in unrelated branches is expanded in each of
+ * them. An element whose name and type already appear recursionDepth times
+ * above it is kept but not expanded, and is marked as recursive.
+ * <p>
+ * The content of a complex type is walked once, and copied under the path of
+ * each later element of that type (whatever its name), unless it contains
+ * recursive elements that depend on the elements above it. Attribute and restriction
+ * descriptors are read once per type and shared.
  * @author samarita
  */
 class Handlers {
 
     String fullPath;
+    private final String[] target;
+    private final int recursionDepth;
     ArrayList<Element> elements = new ArrayList<Element>();
-    ArrayList<String> elementNamesAndComplexTypes = new ArrayList<String>();
-
-    Handlers(String fullPath) {
+    /**
+     * How many times each element name and type appears among the elements
+     * being walked (met again below itself means a recursive type)
+     */
+    private final HashMap<AncestorKey, Integer> ancestors = new HashMap<AncestorKey, Integer>();
+    /**
+     * Names of the elements being walked, root first
+     */
+    private final ArrayList<String> segments = new ArrayList<String>();
+    /**
+     * Elements being walked (null outside requested subtree)
+     */
+    private final ArrayList<Element> parents = new ArrayList<Element>();
+    /**
+     * Contents of complex types already walked, copied when met again
+     */
+    private final IdentityHashMap<XSType, Expansion> expansions = new IdentityHashMap<XSType, Expansion>();
+    /**
+     * Keys of the complex elements walked so far, in walk order
+     */
+    private final ArrayList<AncestorKey> visited = new ArrayList<AncestorKey>();
+    private final IdentityHashMap<XSComplexType, List<AttributeInfo>> attributeInfos = new IdentityHashMap<XSComplexType, List<AttributeInfo>>();
+    private final IdentityHashMap<XSComplexType, HashMap<String, String>> attributeMaps = new IdentityHashMap<XSComplexType, HashMap<String, String>>();
+    private final IdentityHashMap<XSSimpleType, Restrictions> restrictionInfos = new IdentityHashMap<XSSimpleType, Restrictions>();
+
+    /**
+     * Handlers constructor
+     *
+     * @param fullPath Requested path as a <code>String</code>
+     * @param recursionDepth How many times a recursive element is expanded on
+     * a single path as an <code>int</code> (at least 1)
+     */
+    Handlers(String fullPath, int recursionDepth) {
         this.fullPath = fullPath;
+        this.target = fullPath.split("/");
+        this.recursionDepth = Math.max(1, recursionDepth);
+    }
+
+    /**
+     * Walks the requested subtree, starting from its root element
+     *
+     * @param rootElement Root element (first path segment) as a
+     * <code>XSElementDecl</code>
+     */
+    void handleRoot(XSElementDecl rootElement) {
+        String root = target[0];
+        Element rootElem = null;
+        if (target.length == 1) {
+            rootElem = new Element(rootElement, root, BigInteger.ONE, BigInteger.ONE);
+            elements.add(rootElem);
+        }
+        if (rootElement.getType().isComplexType()) {
+            ancestors.put(new AncestorKey(rootElement), 1);
+            segments.add(root);
+            parents.add(rootElem);
+            handleParticles(rootElement.getType().asComplexType());
+            segments.remove(segments.size() - 1);
+            parents.remove(parents.size() - 1);
+            ancestors.clear();
+        }
     }
 
-    void handleParticles(XSComplexType complexType, String path) {
+    private void handleParticles(XSComplexType complexType) {
         XSParticle particle = complexType.getContentType().asParticle();
         if (particle != null) {
-            handleParticle(particle, path);
+            handleParticle(particle, null, false);
         }
     }
 
-    private void handleParticle(XSParticle particle, String path) {
+    /**
+     * Walks a particle of a content model
+     *
+     * @param particle Particle as a <code>XSParticle</code>
+     * @param group Model group particle is in as a <code>ModelGroup</code>
+     * @param alternative If particle is in a choice branch other than the
+     * first <code>true</code>, else <code>false</code>
+     */
+    private void handleParticle(XSParticle particle, ModelGroup group, boolean alternative) {
         XSTerm term = particle.getTerm();
         if (term.isModelGroup()) {
-            handleGroup(term.asModelGroup(), path, particle.getMinOccurs(), particle.getMaxOccurs());
+            handleGroup(term.asModelGroup(), particle.getMinOccurs(), particle.getMaxOccurs(), group, alternative);
         } else if (term.isModelGroupDecl()) {
-            handleGroupDecl(term.asModelGroupDecl(), path, particle.getMinOccurs(), particle.getMaxOccurs());
+            handleGroupDecl(term.asModelGroupDecl(), particle.getMinOccurs(), particle.getMaxOccurs(), group, alternative);
         } else if (term.isElementDecl()) {
-            Element elem = null;
+            handleElement(term.asElementDecl(), particle, group, alternative);
+        }
+    }
 
-            path = path + "/" + term.asElementDecl().getName();
-            if (path.startsWith(this.fullPath)) {
-                elem = new Element(term.asElementDecl(), path, particle.getMinOccurs(), particle.getMaxOccurs());
+    private void handleElement(XSElementDecl elementDecl, XSParticle particle, ModelGroup group, boolean alternative) {
+        String name = elementDecl.getName();
+        int depth = segments.size();
+        if (depth < target.length && !name.equals(target[depth])) {
+            return; //Not on requested path
+        }
+        boolean inSubtree = depth >= target.length - 1;
+        Element elem = null;
+        if (inSubtree) {
+            if (depth == target.length - 1) {
+                elem = new Element(elementDecl, this.fullPath, particle.getMinOccurs(), particle.getMaxOccurs());
+                elem.setGroup(group, alternative);
+            } else {
+                elem = new Element(elementDecl, parents.get(depth - 1), group, alternative, particle.getMinOccurs(), particle.getMaxOccurs());
             }
+        }
 
-            if (term.asElementDecl().getType().isComplexType()) {
-                XSType baseType = term.asElementDecl().getType().getBaseType();
-
-                if (path.startsWith(this.fullPath)) {
-                    elem.setAttributes(handleAttributes(term.asElementDecl().getType().asComplexType()));
-                    //Get restrictions of base type!
-                    if (baseType.isSimpleType()) {
-                        elem.setRestrictions(handleSimpleType(term.asElementDecl().getType().getBaseType().asSimpleType()));
-                    }
-                    elements.add(elem);
+        if (elementDecl.getType().isComplexType()) {
+            XSType baseType = elementDecl.getType().getBaseType();
+
+            AncestorKey key = new AncestorKey(elementDecl);
+            Integer seen = ancestors.get(key);
+            int count = seen == null ? 0 : seen;
+            if (inSubtree) {
+                XSComplexType complexType = elementDecl.getType().asComplexType();
+                elem.setAttributes(handleAttributes(complexType), attributeMaps.get(complexType));
+                //Get restrictions of base type!
+                if (baseType.isSimpleType()) {
+                    elem.setRestrictions(handleSimpleType(baseType.asSimpleType()));
                 }
+                elem.setRecursive(count >= recursionDepth);
+                elements.add(elem);
+            }
 
-                if (elem != null) {
-                    if (elementNamesAndComplexTypes.contains(term.asElementDecl().getName() + "___" + elem.getType()) && path.contains("/" + term.asElementDecl().getName() + "/")) {
-                        System.out.println("RECURSION!");
-                        return;
-                    } else {
-                        elementNamesAndComplexTypes.add(term.asElementDecl().getName() + "___" + elem.getType());
-                    }
+            visited.add(key);
+            if (count < recursionDepth) {
+                Expansion expansion = inSubtree ? expansions.get(elementDecl.getType()) : null;
+                if (expansion != null && expansion.fits(ancestors, key)) {
+                    expansion.copyTo(elements, elem);
+                    visited.addAll(Arrays.asList(expansion.keys));
+                    return;
                 }
-
-                if (path.endsWith("/" + term.asElementDecl().getName() + "/" + term.asElementDecl().getName())) {
-                    System.out.println("Recursion detected! Path is:" + path);
-                    System.out.println("Breaking loop to avoid memory leak!");
-
+                int firstElement = elements.size();
+                int firstVisited = visited.size();
+                ancestors.put(key, count + 1);
+                segments.add(name);
+                parents.add(elem);
+                handleParticles(elementDecl.getType().asComplexType());
+                segments.remove(segments.size() - 1);
+                parents.remove(parents.size() - 1);
+                if (count == 0) {
+                    ancestors.remove(key);
                 } else {
-                    handleParticles(term.asElementDecl().getType().asComplexType(), path);
+                    ancestors.put(key, count);
                 }
-            } else {
-                if (path.startsWith(this.fullPath)) {
-                    elem.setRestrictions(handleSimpleType(term.asElementDecl().getType().asSimpleType()));
-
-                    elements.add(elem);
+                if (inSubtree && expansion == null) {
+                    expansion = new Expansion(key, elem, elements.subList(firstElement, elements.size()), visited.subList(firstVisited, visited.size()));
+                    if (expansion.fits(ancestors, key)) { //Else depends on elements above it
+                        expansions.put(elementDecl.getType(), expansion);
+                    }
                 }
             }
+        } else {
+            if (inSubtree) {
+                elem.setRestrictions(handleSimpleType(elementDecl.getType().asSimpleType()));
 
+                elements.add(elem);
+            }
         }
     }
 
-    private void handleGroup(XSModelGroup modelGroup, String path, BigInteger minOccurs, BigInteger maxOccurs) {
+    private void handleGroup(XSModelGroup modelGroup, BigInteger minOccurs, BigInteger maxOccurs, ModelGroup parentGroup, boolean alternative) {
 
-        String modelGroupType = "";
-        if (path.startsWith(this.fullPath)) {
-            if (modelGroup.getCompositor() == modelGroup.getCompositor().SEQUENCE) {
-                modelGroupType = "Sequence";
+        ModelGroup.Compositor compositor;
+        if (modelGroup.getCompositor() == XSModelGroup.Compositor.SEQUENCE) {
+            compositor = ModelGroup.Compositor.SEQUENCE;
 
-            } else if (modelGroup.getCompositor() == modelGroup.getCompositor().CHOICE) {
-                modelGroupType = "Choice";
+        } else if (modelGroup.getCompositor() == XSModelGroup.Compositor.CHOICE) {
+            compositor = ModelGroup.Compositor.CHOICE;
 
-            } else { //UNDEFINED!!!
-            }
-            elements.add(new Element(modelGroup.getChildren().length + "_" + modelGroupType + "_" + minOccurs + "_" + maxOccurs));
+        } else {
+            compositor = ModelGroup.Compositor.ALL;
         }
+        ModelGroup group = new ModelGroup(compositor, minOccurs.intValue(), maxOccurs.intValue(), parentGroup);
 
-        for (XSParticle particle : modelGroup.getChildren()) {
-            handleParticle(particle, path);
+        XSParticle[] children = modelGroup.getChildren();
+        for (int i = 0; i < children.length; i++) {
+            handleParticle(children[i], group, alternative || (group.isChoice() && i > 0));
         }
 
     }
 
-    private void handleGroupDecl(XSModelGroupDecl modelGroupDecl, String path, BigInteger minOccurs, BigInteger maxOccurs) {
-        handleGroup(modelGroupDecl.getModelGroup(), path, minOccurs, maxOccurs);
+    private void handleGroupDecl(XSModelGroupDecl modelGroupDecl, BigInteger minOccurs, BigInteger maxOccurs, ModelGroup parentGroup, boolean alternative) {
+        handleGroup(modelGroupDecl.getModelGroup(), minOccurs, maxOccurs, parentGroup, alternative);
     }
 
-    HashMap<String, String> handleSimpleType(XSSimpleType simpleType) {
-        SimpleTypeRestriction restriction = new SimpleTypeRestriction();
-        HashMap<String, String> restrs = initRestrictions(simpleType, restriction);
+    Restrictions handleSimpleType(XSSimpleType simpleType) {
+        Restrictions restrs = restrictionInfos.get(simpleType);
+        if (restrs == null) {
+            restrs = initRestrictions(simpleType);
+            restrictionInfos.put(simpleType, restrs);
+        }
         return restrs;
     }
 
-    HashMap<String, String> handleAttributes(XSComplexType complexType) {
-        HashMap<String, String> attrs = new HashMap<String, String>();
+    List<AttributeInfo> handleAttributes(XSComplexType complexType) {
+        List<AttributeInfo> attrs = attributeInfos.get(complexType);
+        if (attrs != null) {
+            return attrs;
+        }
+        HashMap<String, AttributeInfo> attrsByName = new HashMap<String, AttributeInfo>();
 
         Collection<? extends XSAttributeUse> c = complexType.getAttributeUses();
         Iterator<? extends XSAttributeUse> i = c.iterator();
@@ -161,87 +282,187 @@ class Handlers {
 
             XSAttributeDecl attributeDecl = attUse.getDecl();
             XSSimpleType xsAttributeType = attributeDecl.getType();
-            String use = "";
+            AttributeInfo.Use use;
             if (attUse.isRequired()) {
-                use = "Required";
+                use = AttributeInfo.Use.REQUIRED;
             } else {
-                use = "Optional";
+                use = AttributeInfo.Use.OPTIONAL;
             }
-            attrs.put(attributeDecl.getName(), xsAttributeType.getName() + ", " + use + ", " + attributeDecl.getFixedValue() + ", " + attributeDecl.getDefaultValue());
+            XmlString fixedValue = attributeDecl.getFixedValue();
+            XmlString defaultValue = attributeDecl.getDefaultValue();
+            attrsByName.put(attributeDecl.getName(), new AttributeInfo(attributeDecl.getName(), xsAttributeType.getName(), use,
+                    fixedValue == null ? null : fixedValue.value, defaultValue == null ? null : defaultValue.value));
         }
+        //Same order as Element.getAttributes map
+        attrs = Collections.unmodifiableList(new ArrayList<AttributeInfo>(attrsByName.values()));
+        attributeInfos.put(complexType, attrs);
+        attributeMaps.put(complexType, AttributeInfo.toMap(attrs));
         return attrs;
 
     }
 
-    private HashMap<String, String> initRestrictions(XSSimpleType xsSimpleType, SimpleTypeRestriction simpleTypeRestriction) {
-        HashMap<String, String> restrictions = new HashMap<String, String>();
-
+    /**
+     * Reads the declared facets of a simple type (also used by Visitor)
+     *
+     * @param xsSimpleType Simple type as a <code>XSSimpleType</code>
+     * @return Restrictions as a <code>Restrictions</code> (NONE if type is
+     * not a restriction)
+     */
+    static Restrictions initRestrictions(XSSimpleType xsSimpleType) {
         XSRestrictionSimpleType restriction = xsSimpleType.asRestriction();
-        if (restriction != null) {
+        if (restriction == null) {
+            return Restrictions.NONE;
+        }
+        ArrayList<String> enumeration = new ArrayList<String>();
+        ArrayList<String> pattern = new ArrayList<String>();
+        String minValue = null, maxValue = null;
+        int length = -1, minLength = -1, maxLength = -1, totalDigits = -1;
+
+        for (XSFacet facet : restriction.getDeclaredFacets()) {
+            String value = facet.getValue().value;
+            if (facet.getName().equals(XSFacet.FACET_ENUMERATION)) {
+                enumeration.add(value);
+            }
+            if (facet.getName().equals(XSFacet.FACET_MAXINCLUSIVE)) {
+                maxValue = value;
+            }
+            if (facet.getName().equals(XSFacet.FACET_MININCLUSIVE)) {
+                minValue = value;
+            }
+            if (facet.getName().equals(XSFacet.FACET_MAXEXCLUSIVE)) {
+                maxValue = addToInteger(value, -1);
+            }
+            if (facet.getName().equals(XSFacet.FACET_MINEXCLUSIVE)) {
+                minValue = addToInteger(value, 1);
+            }
+            if (facet.getName().equals(XSFacet.FACET_LENGTH)) {
+                length = toInt(value);
+            }
+            if (facet.getName().equals(XSFacet.FACET_MAXLENGTH)) {
+                maxLength = toInt(value);
+            }
+            if (facet.getName().equals(XSFacet.FACET_MINLENGTH)) {
+                minLength = toInt(value);
+            }
+            if (facet.getName().equals(XSFacet.FACET_PATTERN)) {
+                pattern.add(value);
+            }
+            if (facet.getName().equals(XSFacet.FACET_TOTALDIGITS)) {
+                totalDigits = toInt(value);
+            }
+        }
+        return new Restrictions(enumeration.toArray(new String[enumeration.size()]), pattern.toArray(new String[pattern.size()]),
+                minValue, maxValue, length, minLength, maxLength, totalDigits);
+    }
 
-            ArrayList<String> enumeration = new ArrayList<String>();
-            ArrayList<String> pattern = new ArrayList<String>();
+    /**
+     * Converts an exclusive integer bound to an inclusive one (null if bound
+     * is not an integer)
+     */
+    private static String addToInteger(String value, int add) {
+        try {
+            return new BigInteger(value.trim()).add(BigInteger.valueOf(add)).toString();
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
 
-            for (XSFacet facet : restriction.getDeclaredFacets()) {
-                if (facet.getName().equals(XSFacet.FACET_ENUMERATION)) {
-                    enumeration.add(facet.getValue().value);
-                }
-                if (facet.getName().equals(XSFacet.FACET_MAXINCLUSIVE)) {
-                    restrictions.put("maxValue", facet.getValue().value);
-                }
-                if (facet.getName().equals(XSFacet.FACET_MININCLUSIVE)) {
-                    restrictions.put("minValue", facet.getValue().value);
-                }
-                if (facet.getName().equals(XSFacet.FACET_MAXEXCLUSIVE)) {
-                    restrictions.put("maxValue", String.valueOf(Integer.parseInt(facet.getValue().value) - 1));
-                }
-                if (facet.getName().equals(XSFacet.FACET_MINEXCLUSIVE)) {
-                    restrictions.put("minValue", String.valueOf(Integer.parseInt(facet.getValue().value) + 1));
+    private static int toInt(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
 
-                }
-                if (facet.getName().equals(XSFacet.FACET_LENGTH)) {
-                    restrictions.put("length", facet.getValue().value);
-                }
-                if (facet.getName().equals(XSFacet.FACET_MAXLENGTH)) {
-                    restrictions.put("maxLength", facet.getValue().value);
-                }
-                if (facet.getName().equals(XSFacet.FACET_MINLENGTH)) {
-                    restrictions.put("minLength", facet.getValue().value);
-                }
-                if (facet.getName().equals(XSFacet.FACET_PATTERN)) {
-                    pattern.add(facet.getValue().value);
-                }
-                if (facet.getName().equals(XSFacet.FACET_TOTALDIGITS)) {
-                    restrictions.put("totalDigits", facet.getValue().value);
-                    simpleTypeRestriction.totalDigits = facet.getValue().value;
-                }
+    /**
+     * Element name and type (types compared by identity, so that anonymous
+     * types do not match each other)
+     */
+    private static final class AncestorKey {
+
+        private final String name;
+        private final XSType type;
+
+        AncestorKey(XSElementDecl elementDecl) {
+            this.name = elementDecl.getName();
+            this.type = elementDecl.getType();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AncestorKey)) {
+                return false;
             }
-            if (enumeration.size() > 0) {
-                StringBuilder enums = new StringBuilder();
-                for (int i = 0; i < enumeration.size(); i++) {
-                    String delimiter = "###___###";
-                    if (i == enumeration.size() - 1) {
-                        delimiter = "";
-                    }
-                    enums = enums.append(enumeration.get(i)).append(delimiter);
-                }
+            AncestorKey other = (AncestorKey) obj;
+            return type == other.type && name.equals(other.name);
+        }
 
-                restrictions.put("enumerations", enums.toString());
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + System.identityHashCode(type);
+        }
+    }
 
+    /**
+     * Walked content of a complex element, with the key of the element and the
+     * keys of the complex elements in it
+     */
+    private static final class Expansion {
+
+        private final AncestorKey owner;
+        private final Element[] content;
+        /**
+         * Index in content of the parent of each element (-1 for the expanded
+         * element)
+         */
+        private final int[] parentIndices;
+        private final AncestorKey[] keys;
+
+        Expansion(AncestorKey key, Element owner, List<Element> content, List<AncestorKey> visited) {
+            this.owner = key;
+            this.content = content.toArray(new Element[content.size()]);
+            this.parentIndices = new int[this.content.length];
+            IdentityHashMap<Element, Integer> indices = new IdentityHashMap<Element, Integer>();
+            for (int i = 0; i < this.content.length; i++) {
+                Element el = this.content[i];
+                indices.put(el, i);
+                parentIndices[i] = el.parent == owner ? -1 : indices.get(el.parent);
             }
-            if (pattern.size() > 0) {
-                StringBuilder patterns = new StringBuilder();
-                for (int i = 0; i < pattern.size(); i++) {
-                    String delimiter = "###___###";
-                    if (i == pattern.size() - 1) {
-                        delimiter = "";
-                    }
-                    patterns = patterns.append(pattern.get(i)).append(delimiter);
+            LinkedHashSet<AncestorKey> distinct = new LinkedHashSet<AncestorKey>(visited);
+            this.keys = distinct.toArray(new AncestorKey[distinct.size()]);
+        }
+
+        /**
+         * Checks if content would be walked the same below an element of the
+         * same type and the given ancestors: neither the element nor the
+         * elements of the content are among the ancestors, and, if the
+         * element has another name, the content does not contain an element
+         * with the name and type of either (it would be counted as recursive
+         * differently)
+         *
+         * @param ancestors Ancestors of the element as a <code>HashMap</code>
+         * @param newOwner Key of the element as an <code>AncestorKey</code>
+         */
+        boolean fits(HashMap<AncestorKey, Integer> ancestors, AncestorKey newOwner) {
+            if (ancestors.containsKey(newOwner)) {
+                return false;
+            }
+            boolean renamed = !newOwner.equals(owner);
+            for (AncestorKey key : keys) {
+                if (ancestors.containsKey(key) || (renamed && (key.equals(owner) || key.equals(newOwner)))) {
+                    return false;
                 }
-                restrictions.put("patterns", patterns.toString());
+            }
+            return true;
+        }
 
+        void copyTo(ArrayList<Element> elements, Element newOwner) {
+            Element[] copies = new Element[content.length];
+            for (int i = 0; i < content.length; i++) {
+                copies[i] = new Element(content[i], parentIndices[i] == -1 ? newOwner : copies[parentIndices[i]]);
+                elements.add(copies[i]);
             }
         }
-        return restrictions;
     }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LabelsWriter writes a LabelsAndLinksFile in one pass over the elements of a
+ * subtree (in document order). Paths are built incrementally from the path of
+ * the parent element and vocabulary, type, facet and admin flags come from
+ * the elements, so nothing is allocated per element besides the output
+ * itself.
+ *
+ * @author samarita
+ */
+class LabelsWriter {
+
+    private final Appendable out;
+    private final String facet;
+    private final StringBuilder path = new StringBuilder();
+    private Element[] open = new Element[16];
+    private int[] pathEnds = new int[16];
+    private int openCount;
+
+    LabelsWriter(Appendable out, FacetConfig facetConfig) {
+        this.out = out;
+        this.facet = "<facet username=\"" + escape(facetConfig.getUsername())
+                + "\" themasUrl=\"" + escape(facetConfig.getThemasUrl())
+                + "\" thesaurusName=\"" + escape(facetConfig.getThesaurusName())
+                + "\" facetId=\"\"/>\r\n";
+    }
+
+    /**
+     * Writes LabelsAndLinksFile
+     *
+     * @param elements Subtree elements as a <code>List</code> (null writes an
+     * empty file)
+     * @param type Entity type as a <code>String</code>
+     * @param lang Language as a <code>String</code> ("gr","en" for now)
+     * @throws IOException If output fails
+     */
+    void write(List<Element> elements, String type, String lang) throws IOException {
+        boolean gr = lang.equals("gr");
+        boolean en = lang.equals("en");
+        out.append("<nodes>");
+        if (elements != null) {
+            for (Element el : elements) {
+                appendPath(el);
+                if (el.isInAdminPart()) {
+                    continue;
+                }
+                out.append("<node type=\"").append(type).append("\">\r\n<xpath>").append(path).append("</xpath>\r\n");
+                if (gr) {
+                    out.append("<gr>").append(el.getName()).append("</gr>\r\n<en></en>\r\n");
+                } else if (en) {
+                    out.append("<gr></gr>\r\n<en>").append(el.getName()).append("</en>\r\n");
+                }
+                if (el.hasVocabulary()) {
+                    out.append("<vocabulary>").append(el.getName()).append(".xml</vocabulary>\r\n");
+                }
+                if (el.hasValueFrom()) {
+                    out.append("<valueFrom type=\"\"></valueFrom>\r\n");
+                }
+                if (el.hasFacet()) {
+                    out.append(facet);
+                }
+                out.append("</node>");
+            }
+        }
+        out.append("</nodes>");
+    }
+
+    /**
+     * Sets path to the full path of an element, reusing the path of its
+     * parent if it is open
+     */
+    private void appendPath(Element el) {
+        while (openCount > 0 && open[openCount - 1] != el.getParent()) {
+            openCount--;
+        }
+        if (openCount == 0) {
+            path.setLength(0);
+            path.append(el.getFullPath());
+        } else {
+            path.setLength(pathEnds[openCount - 1]);
+            path.append('/').append(el.getName());
+        }
+        if (openCount == open.length) {
+            open = Arrays.copyOf(open, openCount * 2);
+            pathEnds = Arrays.copyOf(pathEnds, openCount * 2);
+        }
+        open[openCount] = el;
+        pathEnds[openCount++] = path.length();
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+/**
+ * LoadTiming holds the time SchemaFile.warmUp spent loading a SchemaFile:
+ * parsing the xsd into the element model (XSOM) and compiling the validation
+ * grammar. A step already done before warmUp takes no time.
+ *
+ * @author samarita
+ */
+public class LoadTiming {
+
+    private final String xsdFile;
+    private final long parseNanos, compileNanos;
+
+    LoadTiming(String xsdFile, long parseNanos, long compileNanos) {
+        this.xsdFile = xsdFile;
+        this.parseNanos = parseNanos;
+        this.compileNanos = compileNanos;
+    }
+
+    /**
+     * Gets path of xsd file
+     *
+     * @return Path as a <code>String</code>
+     */
+    public String getXsdFile() {
+        return xsdFile;
+    }
+
+    /**
+     * Gets time spent parsing the xsd
+     *
+     * @return Time in milliseconds as a <code>long</code>
+     */
+    public long getParseMillis() {
+        return parseNanos / 1000000;
+    }
+
+    /**
+     * Gets time spent compiling the validation grammar
+     *
+     * @return Time in milliseconds as a <code>long</code>
+     */
+    public long getCompileMillis() {
+        return compileNanos / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        return xsdFile + ": parse " + getParseMillis() + " ms, compile " + getCompileMillis() + " ms";
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+/**
+ * ModelGroup is an xsd model group (sequence, choice or all) of a complex
+ * type, with its occurence bounds. Groups nested in each other point to the
+ * group they are in, up to the first group of the type. Groups are immutable
+ * and shared by all elements of the same type.
+ *
+ * @author samarita
+ */
+public final class ModelGroup {
+
+    /**
+     * Model group compositor
+     */
+    public enum Compositor {
+
+        SEQUENCE, CHOICE, ALL
+    }
+
+    private final Compositor compositor;
+    private final int minOccurs, maxOccurs;
+    private final ModelGroup parent;
+    private final boolean optional;
+    private final String info;
+
+    ModelGroup(Compositor compositor, int minOccurs, int maxOccurs, ModelGroup parent) {
+        this.compositor = compositor;
+        this.minOccurs = minOccurs;
+        this.maxOccurs = maxOccurs;
+        this.parent = parent;
+        this.optional = minOccurs == 0 || (parent != null && parent.optional);
+        String type = "";
+        if (compositor == Compositor.SEQUENCE) {
+            type = "Sequence";
+        } else if (compositor == Compositor.CHOICE) {
+            type = "Choice";
+        }
+        this.info = type + "_" + minOccurs + "_" + maxOccurs;
+    }
+
+    /**
+     * Gets compositor
+     *
+     * @return Compositor as a <code>Compositor</code>
+     */
+    public Compositor getCompositor() {
+        return compositor;
+    }
+
+    /**
+     * Checks if group is a choice
+     *
+     * @return If choice <code>true</code>, else <code>false</code>
+     */
+    public boolean isChoice() {
+        return compositor == Compositor.CHOICE;
+    }
+
+    /**
+     * Gets minimum occurences
+     *
+     * @return Minimum occurences as an <code>int</code>
+     */
+    public int getMinOccurs() {
+        return minOccurs;
+    }
+
+    /**
+     * Gets maximum occurences
+     *
+     * @return Maximum occurences as an <code>int</code> (-1 if unbounded)
+     */
+    public int getMaxOccurs() {
+        return maxOccurs;
+    }
+
+    /**
+     * Gets group this group is in
+     *
+     * @return Parent group as a <code>ModelGroup</code> (null if first group
+     * of a type)
+     */
+    public ModelGroup getParent() {
+        return parent;
+    }
+
+    /**
+     * Checks if group is optional, that is if it or a group it is in has
+     * minimum occurences 0
+     *
+     * @return If optional <code>true</code>, else <code>false</code>
+     */
+    public boolean isOptional() {
+        return optional;
+    }
+
+    /**
+     * Gets group as "Compositor_min_max" (e.g. "Choice_0_1"), the format of
+     * Element.getInfo
+     *
+     * @return Group info as a <code>String</code>
+     */
+    @Override
+    public String toString() {
+        return info;
+    }
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * ModelSnapshot saves the element trees of all root elements of a
+ * SchemaModel to a binary file and reads them back without XSOM. The file
+ * starts with the recursion depth and the paths and content digest of the
+ * files the model was built from, so a snapshot is only used while the xsd
+ * and its imports/includes are unchanged.
+ * <p>
+ * Strings, model groups, attribute lists and restrictions are written once
+ * in tables and elements refer to them by index (-1 for none), so elements
+ * read back share them as elements built by Handlers do. Elements are
+ * written in document order with the index of their parent. The file ends
+ * with a CRC32 of its content. Snapshots are read through a memory-mapped
+ * buffer.
+ *
+ * @author samarita
+ */
+class ModelSnapshot {
+
+    private static final int MAGIC = 0x5352534E; //"SRSN"
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Gets digest of the paths and content of files
+     *
+     * @param files File paths as a <code>List</code>
+     * @return Digest as a <code>byte[]</code>
+     * @throws IOException If a file cannot be read
+     */
+    static byte[] digest(List<String> files) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) { //Every JVM has SHA-1
+            throw new IOException(ex);
+        }
+        for (String file : files) {
+            digest.update(file.getBytes(UTF8));
+            digest.update((byte) 0);
+            digest.update(Files.readAllBytes(Paths.get(file)));
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Gets last modified time and size of files, without reading them
+     *
+     * @param files File paths as a <code>List</code>
+     * @return Time and size of each file as a <code>long[]</code>
+     * @throws IOException If a file cannot be read
+     */
+    static long[] stamps(List<String> files) throws IOException {
+        long[] stamps = new long[files.size() * 2];
+        for (int i = 0; i < files.size(); i++) {
+            Path file = Paths.get(files.get(i));
+            stamps[2 * i] = Files.getLastModifiedTime(file).toMillis();
+            stamps[2 * i + 1] = Files.size(file);
+        }
+        return stamps;
+    }
+
+    /**
+     * Writes snapshot of a model, building the trees of all its root elements
+     *
+     * @param model Model as a <code>SchemaModel</code>
+     * @param snapshotFile Snapshot file as a <code>Path</code>
+     * @throws IOException If snapshot cannot be written
+     */
+    static void write(SchemaModel model, Path snapshotFile) throws IOException {
+        byte[] sourceDigest = model.getSourceDigest();
+        Writer writer = new Writer();
+        ArrayList<SchemaModel.Tree> trees = new ArrayList<SchemaModel.Tree>();
+        for (String root : model.getRootNames()) {
+            SchemaModel.Tree tree = model.getTree(root);
+            trees.add(tree);
+            for (Element el : tree.elements) {
+                writer.add(el);
+            }
+        }
+        Path directory = snapshotFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+        try {
+            CRC32 checksum = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), checksum))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(model.getRecursionDepth());
+                out.writeInt(sourceDigest.length);
+                out.write(sourceDigest);
+                out.writeInt(model.sourceFiles.size());
+                for (String file : model.sourceFiles) {
+                    writeString(out, file);
+                }
+                writer.writeTables(out);
+                out.writeInt(model.getRootNames().size());
+                for (int i = 0; i < trees.size(); i++) {
+                    out.writeInt(writer.strings.get(model.getRootNames().get(i)));
+                    writer.writeTree(out, trees.get(i));
+                }
+                out.writeLong(checksum.getValue());
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads snapshot, if still valid
+     *
+     * @param snapshotFile Snapshot file as a <code>Path</code>
+     * @param xsdFile Canonical path of the xsd the model is for as a
+     * <code>String</code> (null if xsd is not a local file, then no snapshot is
+     * valid)
+     * @param recursionDepth Recursion depth of the model as an
+     * <code>int</code>
+     * @param templateCacheSize Template cache size of the model as an
+     * <code>int</code>
+     * @return Model as a <code>SchemaModel</code> (null if snapshot is
+     * missing, stale, corrupt or saved from another xsd)
+     */
+    static SchemaModel read(Path snapshotFile, String xsdFile, int recursionDepth, int templateCacheSize) {
+        if (xsdFile == null) {
+            return null;
+        }
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        try {
+            if (!checksumMatches(in)) {
+                return null;
+            }
+            if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getInt() != recursionDepth) {
+                return null;
+            }
+            byte[] sourceDigest = new byte[in.getInt()];
+            in.get(sourceDigest);
+            String[] files = new String[in.getInt()];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = readString(in);
+            }
+            List<String> sourceFiles = Collections.unmodifiableList(Arrays.asList(files));
+            if (!sourceFiles.contains(xsdFile)) { //Saved from another xsd
+                return null;
+            }
+            try {
+                if (!Arrays.equals(sourceDigest, digest(sourceFiles))) {
+                    return null;
+                }
+            } catch (IOException ex) { //A source file is gone
+                return null;
+            }
+            Reader reader = new Reader(in);
+            int rootCount = in.getInt();
+            ArrayList<String> rootNames = new ArrayList<String>(rootCount);
+            HashMap<String, SchemaModel.Tree> trees = new HashMap<String, SchemaModel.Tree>();
+            for (int i = 0; i < rootCount; i++) {
+                String root = reader.strings[in.getInt()];
+                rootNames.add(root);
+                trees.put(root, new SchemaModel.Tree(reader.readTree()));
+            }
+            return new SchemaModel(rootNames, trees, recursionDepth, templateCacheSize, sourceFiles, sourceDigest);
+        } catch (RuntimeException ex) { //Corrupt, e.g. BufferUnderflowException
+            return null;
+        }
+    }
+
+    /**
+     * Checks the CRC32 at the end of a snapshot against its content
+     */
+    private static boolean checksumMatches(ByteBuffer in) {
+        if (in.remaining() < 8) {
+            return false;
+        }
+        ByteBuffer content = in.duplicate();
+        content.limit(in.limit() - 8);
+        CRC32 checksum = new CRC32();
+        byte[] chunk = new byte[8192];
+        while (content.hasRemaining()) {
+            int length = Math.min(chunk.length, content.remaining());
+            content.get(chunk, 0, length);
+            checksum.update(chunk, 0, length);
+        }
+        return in.getLong(in.limit() - 8) == checksum.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Collects the tables of a model and writes them and its trees
+     */
+    private static class Writer {
+
+        final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+        final ArrayList<String> stringList = new ArrayList<String>();
+        final IdentityHashMap<ModelGroup, Integer> groups = new IdentityHashMap<ModelGroup, Integer>();
+        final ArrayList<ModelGroup> groupList = new ArrayList<ModelGroup>();
+        final IdentityHashMap<List<AttributeInfo>, Integer> attributeLists = new IdentityHashMap<List<AttributeInfo>, Integer>();
+        final ArrayList<List<AttributeInfo>> attributeListList = new ArrayList<List<AttributeInfo>>();
+        final IdentityHashMap<Restrictions, Integer> restrictions = new IdentityHashMap<Restrictions, Integer>();
+        final ArrayList<Restrictions> restrictionList = new ArrayList<Restrictions>();
+
+        void add(Element el) {
+            string(el.getName());
+            string(el.getType());
+            group(el.getGroup());
+            List<AttributeInfo> attributes = el.getAttributeInfos();
+            if (!attributes.isEmpty() && !attributeLists.containsKey(attributes)) {
+                attributeLists.put(attributes, attributeListList.size());
+                attributeListList.add(attributes);
+                for (AttributeInfo attribute : attributes) {
+                    string(attribute.getName());
+                    string(attribute.getType());
+                    string(attribute.getFixedValue());
+                    string(attribute.getDefaultValue());
+                }
+            }
+            Restrictions restriction = el.getRestrictionInfo();
+            if (restriction != Restrictions.NONE && !restrictions.containsKey(restriction)) {
+                restrictions.put(restriction, restrictionList.size());
+                restrictionList.add(restriction);
+                for (String value : restriction.getEnumerations()) {
+                    string(value);
+                }
+                for (String value : restriction.getPatterns()) {
+                    string(value);
+                }
+                string(restriction.getMinValue());
+                string(restriction.getMaxValue());
+            }
+        }
+
+        private int string(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer index = strings.get(value);
+            if (index == null) {
+                index = stringList.size();
+                strings.put(value, index);
+                stringList.add(value);
+            }
+            return index;
+        }
+
+        /**
+         * Adds a model group after its parent groups, so that parents are read
+         * first
+         */
+        private int group(ModelGroup group) {
+            if (group == null) {
+                return -1;
+            }
+            Integer index = groups.get(group);
+            if (index == null) {
+                group(group.getParent());
+                index = groupList.size();
+                groups.put(group, index);
+                groupList.add(group);
+            }
+            return index;
+        }
+
+        void writeTables(DataOutputStream out) throws IOException {
+            out.writeInt(stringList.size());
+            for (String value : stringList) {
+                writeString(out, value);
+            }
+            out.writeInt(groupList.size());
+            for (ModelGroup group : groupList) {
+                out.writeByte(group.getCompositor().ordinal());
+                out.writeInt(group.getMinOccurs());
+                out.writeInt(group.getMaxOccurs());
+                out.writeInt(group(group.getParent()));
+            }
+            out.writeInt(attributeListList.size());
+            for (List<AttributeInfo> attributes : attributeListList) {
+                out.writeInt(attributes.size());
+                for (AttributeInfo attribute : attributes) {
+                    out.writeInt(string(attribute.getName()));
+                    out.writeInt(string(attribute.getType()));
+                    out.writeByte(attribute.getUse().ordinal());
+                    out.writeInt(string(attribute.getFixedValue()));
+                    out.writeInt(string(attribute.getDefaultValue()));
+                }
+            }
+            out.writeInt(restrictionList.size());
+            for (Restrictions restriction : restrictionList) {
+                out.writeInt(restriction.getEnumerations().size());
+                for (String value : restriction.getEnumerations()) {
+                    out.writeInt(string(value));
+                }
+                out.writeInt(restriction.getPatterns().size());
+                for (String value : restriction.getPatterns()) {
+                    out.writeInt(string(value));
+                }
+                out.writeInt(string(restriction.getMinValue()));
+                out.writeInt(string(restriction.getMaxValue()));
+                out.writeInt(restriction.getLength());
+                out.writeInt(restriction.getMinLength());
+                out.writeInt(restriction.getMaxLength());
+                out.writeInt(restriction.getTotalDigits());
+            }
+        }
+
+        void writeTree(DataOutputStream out, SchemaModel.Tree tree) throws IOException {
+            IdentityHashMap<Element, Integer> indices = new IdentityHashMap<Element, Integer>();
+            out.writeInt(tree.elements.length);
+            for (int i = 0; i < tree.elements.length; i++) {
+                Element el = tree.elements[i];
+                indices.put(el, i);
+                Integer parent = el.getParent() == null ? null : indices.get(el.getParent());
+                out.writeInt(parent == null ? -1 : parent);
+                out.writeInt(string(el.getName()));
+                out.writeInt(string(el.getType()));
+                out.writeInt(el.getMinOccurs());
+                out.writeInt(el.getMaxOccurs());
+                out.writeByte(el.getModelFlags());
+                out.writeInt(group(el.getGroup()));
+                List<AttributeInfo> attributes = el.getAttributeInfos();
+                out.writeInt(attributes.isEmpty() ? -1 : attributeLists.get(attributes));
+                Restrictions restriction = el.getRestrictionInfo();
+                out.writeInt(restriction == Restrictions.NONE ? -1 : restrictions.get(restriction));
+            }
+        }
+    }
+
+    /**
+     * Reads the tables of a snapshot and then its trees
+     */
+    private static class Reader {
+
+        private final ByteBuffer in;
+        final String[] strings;
+        private final ModelGroup[] groups;
+        private final List<AttributeInfo>[] attributeLists;
+        private final HashMap<String, String>[] attributeMaps;
+        private final Restrictions[] restrictions;
+
+        @SuppressWarnings("unchecked")
+        Reader(ByteBuffer in) {
+            this.in = in;
+            strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(in);
+            }
+            groups = new ModelGroup[in.getInt()];
+            for (int i = 0; i < groups.length; i++) {
+                ModelGroup.Compositor compositor = ModelGroup.Compositor.values()[in.get()];
+                int minOccurs = in.getInt();
+                int maxOccurs = in.getInt();
+                int parent = in.getInt();
+                groups[i] = new ModelGroup(compositor, minOccurs, maxOccurs, parent == -1 ? null : groups[parent]);
+            }
+            attributeLists = (List<AttributeInfo>[]) new List<?>[in.getInt()];
+            attributeMaps = (HashMap<String, String>[]) new HashMap<?, ?>[attributeLists.length];
+            for (int i = 0; i < attributeLists.length; i++) {
+                AttributeInfo[] attributes = new AttributeInfo[in.getInt()];
+                for (int j = 0; j < attributes.length; j++) {
+                    String name = string();
+                    String type = string();
+                    AttributeInfo.Use use = AttributeInfo.Use.values()[in.get()];
+                    attributes[j] = new AttributeInfo(name, type, use, string(), string());
+                }
+                attributeLists[i] = Collections.unmodifiableList(Arrays.asList(attributes));
+                attributeMaps[i] = AttributeInfo.toMap(attributeLists[i]);
+            }
+            restrictions = new Restrictions[in.getInt()];
+            for (int i = 0; i < restrictions.length; i++) {
+                String[] enumerations = new String[in.getInt()];
+                for (int j = 0; j < enumerations.length; j++) {
+                    enumerations[j] = string();
+                }
+                String[] patterns = new String[in.getInt()];
+                for (int j = 0; j < patterns.length; j++) {
+                    patterns[j] = string();
+                }
+                String minValue = string();
+                String maxValue = string();
+                restrictions[i] = new Restrictions(enumerations, patterns, minValue, maxValue, in.getInt(), in.getInt(), in.getInt(), in.getInt());
+            }
+        }
+
+        private String string() {
+            int index = in.getInt();
+            return index == -1 ? null : strings[index];
+        }
+
+        ArrayList<Element> readTree() {
+            Element[] elements = new Element[in.getInt()];
+            for (int i = 0; i < elements.length; i++) {
+                int parent = in.getInt();
+                String name = string();
+                String type = string();
+                int minOccurs = in.getInt();
+                int maxOccurs = in.getInt();
+                int flags = in.get();
+                int group = in.getInt();
+                int attributes = in.getInt();
+                int restriction = in.getInt();
+                Element el = new Element(parent == -1 ? null : elements[parent], name, type, minOccurs, maxOccurs, flags, group == -1 ? null : groups[group]);
+                if (attributes != -1) {
+                    el.setAttributes(attributeLists[attributes], attributeMaps[attributes]);
+                }
+                if (restriction != -1) {
+                    el.setRestrictions(restrictions[restriction]);
+                }
+                elements[i] = el;
+            }
+            return new ArrayList<Element>(Arrays.asList(elements));
+        }
+    }
+}
@@ -27,41 +27,104 @@
  */
 package schemareader;
 
+import java.util.ArrayList;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 /**
- * Customized ErrorHandler for SchemaFile
+ * Customized ErrorHandler for SchemaFile. Problems are kept as
+ * ValidationErrors. By default the first error stops validation; use
+ * setMaxErrors to collect more errors before stopping.
  * @author samarita
  */
 public class MyErrorHandler implements ErrorHandler {
 
-    StringBuffer errorLog = new StringBuffer();
+    private final ArrayList<ValidationError> errors = new ArrayList<ValidationError>();
+    private int maxErrors = 1;
+    private int errorCount = 0;
+    private boolean stopped = false;
+    private ElementPathTracker pathTracker;
+    private RecentLines recentLines;
 
     public void warning(SAXParseException ex) {
-        setLog(ex);
+        setLog(ex, ValidationError.Severity.WARNING);
     }
 
     public void error(SAXParseException ex) throws SAXException {
-        setLog(ex);
-        throw ex;
+        setLog(ex, ValidationError.Severity.ERROR);
+        errorCount++;
+        if (errorCount >= maxErrors) {
+            stopped = true;
+            throw ex;
+        }
     }
 
     public void fatalError(SAXParseException ex) throws SAXException {
-        setLog(ex);
-        System.err.println(ex.getMessage());
+        setLog(ex, ValidationError.Severity.FATAL);
+        errorCount++;
+        stopped = true;
         throw ex;
     }
 
-   
+    private void setLog(SAXParseException e, ValidationError.Severity severity) {
+        String elementPath = null;
+        String encoding = null;
+        if (pathTracker != null) {
+            elementPath = pathTracker.getPath();
+            encoding = pathTracker.getEncoding();
+        }
+        String context = null;
+        if (recentLines != null && severity != ValidationError.Severity.WARNING) {
+            context = recentLines.getErrorContext(e.getLineNumber(), encoding);
+        }
+        errors.add(new ValidationError(severity, e.getLineNumber(), e.getColumnNumber(), e.getMessage(), e.getSystemId(), elementPath, context));
+    }
+
+    /**
+     * Sets maximum number of errors to collect before validation stops
+     *
+     * @param maxErrors Maximum number of errors as an <code>int</code> (1 stops
+     * at first error)
+     */
+    public void setMaxErrors(int maxErrors) {
+        this.maxErrors = Math.max(1, maxErrors);
+    }
+
+    void setPathTracker(ElementPathTracker pathTracker) {
+        this.pathTracker = pathTracker;
+    }
+
+    void setRecentLines(RecentLines recentLines) {
+        this.recentLines = recentLines;
+    }
 
-    private void setLog(SAXParseException e) {
-            errorLog = errorLog.append("XML File: ").append(e.getSystemId());
-            errorLog = errorLog.append("\nLine: ").append(e.getLineNumber());
-            errorLog = errorLog.append("\nColumn: ").append(e.getColumnNumber());
-            errorLog = errorLog.append("\nMessage: ").append(e.getMessage());
-      
+    /**
+     * Clears the log so that the handler can be reused
+     */
+    public void reset() {
+        this.errors.clear();
+        this.errorCount = 0;
+        this.stopped = false;
+        this.maxErrors = 1;
+    }
+
+    /**
+     * Gets reported problems, warnings included
+     *
+     * @return Errors as an <code>ArrayList</code>
+     */
+    public ArrayList<ValidationError> getErrors() {
+        return new ArrayList<ValidationError>(errors);
+    }
+
+    /**
+     * Checks if validation was stopped by this handler
+     *
+     * @return If stopped <code>true</code>, else <code>false</code>
+     */
+    public boolean isStopped() {
+        return stopped;
     }
 
     /**
@@ -69,6 +132,6 @@ public class MyErrorHandler implements ErrorHandler {
      * @return
      */
     public String getLog() {
-        return this.errorLog.toString();
+        return ValidationResult.toLog(errors);
     }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.util.regex.Pattern;
+
+/**
+ * Ring buffer with the last characters of the xml being validated and the
+ * start offsets of its last lines, so that the part of the xml with an error
+ * can be shown without reading the xml twice. The capturing streams hand the
+ * parser at most MAX_READ characters per read, so the line of an error (and
+ * the lines before it) are still in the buffer when the error is reported.
+ * Memory use is fixed, whatever the size of the xml.
+ *
+ * @author samarita
+ */
+class RecentLines {
+
+    /**
+     * How many lines before the error line to search for a complete element
+     */
+    static final int CONTEXT_LINES = 30;
+    static final int MAX_READ = 4096;
+    private static final int RING_SIZE = 32768; //Power of two
+    private static final int MAX_LINES = 8192; //Power of two, more than MAX_READ + CONTEXT_LINES
+    private static final String ELEMENT_REGEX = "(?:<([^\\s]+)[^>]*/>|<([^\\s]+)[^>]*>(.*?)</\\2>)";
+    private final char[] ring = new char[RING_SIZE];
+    private final long[] lineStarts = new long[MAX_LINES];
+    private long written;
+    private int currentLine;
+    private boolean afterCR;
+    private boolean bytes;
+
+    RecentLines() {
+        reset(false);
+    }
+
+    /**
+     * Clears buffer
+     *
+     * @param bytes If buffer holds raw bytes (one char per byte) <code>true</code>,
+     * else <code>false</code>
+     */
+    final void reset(boolean bytes) {
+        this.bytes = bytes;
+        this.afterCR = false;
+        this.written = 0;
+        this.currentLine = 1;
+        this.lineStarts[1] = 0;
+    }
+
+    void append(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c == '\n' || c == '\r') {
+                lineEnd(c, written + (i - offset) + 1);
+            } else {
+                afterCR = false;
+            }
+        }
+        int position = (int) (written & (RING_SIZE - 1));
+        int first = Math.min(length, RING_SIZE - position);
+        System.arraycopy(chars, offset, ring, position, first);
+        if (first < length) {
+            System.arraycopy(chars, offset + first, ring, 0, Math.min(length - first, RING_SIZE));
+        }
+        written += length;
+    }
+
+    void append(byte[] b, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            char c = (char) (b[i] & 0xFF);
+            if (c == '\n' || c == '\r') {
+                lineEnd(c, written + 1);
+            } else {
+                afterCR = false;
+            }
+            ring[(int) (written & (RING_SIZE - 1))] = c;
+            written++;
+        }
+    }
+
+    private void lineEnd(char c, long nextLineStart) {
+        if (c == '\n' && afterCR) { //CRLF, line already counted
+            lineStarts[currentLine & (MAX_LINES - 1)] = nextLineStart;
+            afterCR = false;
+            return;
+        }
+        afterCR = c == '\r';
+        currentLine++;
+        lineStarts[currentLine & (MAX_LINES - 1)] = nextLineStart;
+    }
+
+    /**
+     * Gets a line, if still in buffer. Only the tail of lines longer than the
+     * buffer is available.
+     *
+     * @param lineNumber Line number as an <code>int</code>
+     * @param encoding Xml encoding as a <code>String</code> (used only for raw
+     * bytes)
+     * @return Line as a <code>String</code> (null if not in buffer)
+     */
+    String getLine(int lineNumber, String encoding) {
+        if (lineNumber < 1 || lineNumber > currentLine || lineNumber <= currentLine - MAX_LINES) {
+            return null;
+        }
+        long start = lineStarts[lineNumber & (MAX_LINES - 1)];
+        long end = lineNumber < currentLine ? lineStarts[(lineNumber + 1) & (MAX_LINES - 1)] : written;
+        start = Math.max(start, written - RING_SIZE);
+        if (start >= end) {
+            return null;
+        }
+        StringBuilder line = new StringBuilder((int) (end - start));
+        for (long i = start; i < end; i++) {
+            char c = ring[(int) (i & (RING_SIZE - 1))];
+            if (c != '\n' && c != '\r') {
+                line.append(c);
+            }
+        }
+        if (bytes) {
+            try {
+                return new String(line.toString().getBytes("ISO-8859-1"), encoding == null ? "UTF-8" : encoding);
+            } catch (UnsupportedEncodingException ex) {
+                return null;
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Gets the part of the xml with an error: the first complete element found
+     * in the error line, or in the error line and up to CONTEXT_LINES lines
+     * before it.
+     *
+     * @param lineNumber Error line number as an <code>int</code>
+     * @param encoding Xml encoding as a <code>String</code>
+     * @return Part with error as a <code>String</code> (null if not available)
+     */
+    String getErrorContext(int lineNumber, String encoding) {
+        if (bytes && encoding != null && (encoding.toUpperCase().startsWith("UTF-16") || encoding.toUpperCase().startsWith("UTF-32"))) {
+            return null; //Lines were split on single bytes, cannot decode
+        }
+        String lineWithProblem = getLine(lineNumber, encoding);
+        if (lineWithProblem == null) {
+            return null;
+        }
+        String element = findFirstElement(lineWithProblem);
+
+        int lineIndex = lineNumber;
+        while (element == null) {
+            lineIndex = lineIndex - 1;
+            String previousLine = getLine(lineIndex, encoding);
+            if (lineIndex < lineNumber - CONTEXT_LINES || previousLine == null) { //Show last 30 lines...
+                element = "...\n" + lineWithProblem + "\n...";
+                break;
+            }
+            lineWithProblem = previousLine + "\n" + lineWithProblem;
+            element = findFirstElement(lineWithProblem);
+        }
+        return element;
+    }
+
+    private static String findFirstElement(String text) {
+        final String[] first = new String[1];
+        new Utils().findReg(ELEMENT_REGEX, text, Pattern.DOTALL, new Utils.MatchHandler() {
+            public boolean onMatch(String match) {
+                first[0] = match;
+                return false;
+            }
+        });
+        return first[0];
+    }
+
+    /**
+     * Reader that copies what it reads to a RecentLines buffer, returning at
+     * most MAX_READ characters per read
+     */
+    static class CapturingReader extends FilterReader {
+
+        private final RecentLines recentLines;
+
+        CapturingReader(Reader in, RecentLines recentLines) {
+            super(in);
+            this.recentLines = recentLines;
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] single = new char[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0];
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int count = in.read(cbuf, off, Math.min(len, MAX_READ));
+            if (count > 0) {
+                recentLines.append(cbuf, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("skip not supported");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * InputStream that copies what it reads to a RecentLines buffer, returning
+     * at most MAX_READ bytes per read
+     */
+    static class CapturingInputStream extends FilterInputStream {
+
+        private final RecentLines recentLines;
+
+        CapturingInputStream(InputStream in, RecentLines recentLines) {
+            super(in);
+            this.recentLines = recentLines;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, Math.min(len, MAX_READ));
+            if (count > 0) {
+                recentLines.append(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("skip not supported");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
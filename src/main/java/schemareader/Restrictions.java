@@ -0,0 +1,228 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Restrictions holds the facets (enumerations, patterns, bounds and lengths)
+ * of the simple type of an Element. It is immutable and shared by all
+ * elements of the same type.
+ *
+ * @author samarita
+ */
+public final class Restrictions {
+
+    static final Restrictions NONE = new Restrictions(new String[0], new String[0], null, null, -1, -1, -1, -1);
+    private static final String DELIMITER = "###___###";
+    private final List<String> enumerations;
+    private final List<String> patterns;
+    private final String minValue, maxValue;
+    private final BigDecimal minNumber, maxNumber;
+    private final int length, minLength, maxLength, totalDigits;
+    private final HashMap<String, String> map;
+
+    Restrictions(String[] enumerations, String[] patterns, String minValue, String maxValue, int length, int minLength, int maxLength, int totalDigits) {
+        this.enumerations = Collections.unmodifiableList(Arrays.asList(enumerations));
+        this.patterns = Collections.unmodifiableList(Arrays.asList(patterns));
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.minNumber = toNumber(minValue);
+        this.maxNumber = toNumber(maxValue);
+        this.length = length;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.totalDigits = totalDigits;
+        this.map = createMap();
+    }
+
+    private static BigDecimal toNumber(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException ex) {
+            return null; //e.g. a date bound
+        }
+    }
+
+    /**
+     * Gets enumeration values
+     *
+     * @return Enumerations as an unmodifiable <code>List</code> (empty if none)
+     */
+    public List<String> getEnumerations() {
+        return enumerations;
+    }
+
+    /**
+     * Gets patterns
+     *
+     * @return Patterns as an unmodifiable <code>List</code> (empty if none)
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Gets minimum value (minInclusive, or minExclusive + 1 for integers)
+     *
+     * @return Minimum value as a <code>String</code> (null if none)
+     */
+    public String getMinValue() {
+        return minValue;
+    }
+
+    /**
+     * Gets maximum value (maxInclusive, or maxExclusive - 1 for integers)
+     *
+     * @return Maximum value as a <code>String</code> (null if none)
+     */
+    public String getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * Gets minimum value as a number
+     *
+     * @return Minimum value as a <code>BigDecimal</code> (null if none or not
+     * numeric)
+     */
+    public BigDecimal getMinNumber() {
+        return minNumber;
+    }
+
+    /**
+     * Gets maximum value as a number
+     *
+     * @return Maximum value as a <code>BigDecimal</code> (null if none or not
+     * numeric)
+     */
+    public BigDecimal getMaxNumber() {
+        return maxNumber;
+    }
+
+    /**
+     * Gets length
+     *
+     * @return Length as an <code>int</code> (-1 if none)
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets minimum length
+     *
+     * @return Minimum length as an <code>int</code> (-1 if none)
+     */
+    public int getMinLength() {
+        return minLength;
+    }
+
+    /**
+     * Gets maximum length
+     *
+     * @return Maximum length as an <code>int</code> (-1 if none)
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Gets total digits
+     *
+     * @return Total digits as an <code>int</code> (-1 if none)
+     */
+    public int getTotalDigits() {
+        return totalDigits;
+    }
+
+    /**
+     * Checks if there are no restrictions
+     *
+     * @return If empty <code>true</code>, else <code>false</code>
+     */
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    /**
+     * Gets restrictions in the format of Element.getRestrictions (enumerations
+     * and patterns joined with "###___###"). The map is shared and must not be
+     * handed out.
+     */
+    HashMap<String, String> asMap() {
+        return map;
+    }
+
+    private HashMap<String, String> createMap() {
+        HashMap<String, String> restrictions = new HashMap<String, String>();
+        if (minValue != null) {
+            restrictions.put("minValue", minValue);
+        }
+        if (maxValue != null) {
+            restrictions.put("maxValue", maxValue);
+        }
+        if (length != -1) {
+            restrictions.put("length", String.valueOf(length));
+        }
+        if (minLength != -1) {
+            restrictions.put("minLength", String.valueOf(minLength));
+        }
+        if (maxLength != -1) {
+            restrictions.put("maxLength", String.valueOf(maxLength));
+        }
+        if (totalDigits != -1) {
+            restrictions.put("totalDigits", String.valueOf(totalDigits));
+        }
+        if (!enumerations.isEmpty()) {
+            restrictions.put("enumerations", join(enumerations));
+        }
+        if (!patterns.isEmpty()) {
+            restrictions.put("patterns", join(patterns));
+        }
+        return restrictions;
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                joined.append(DELIMITER);
+            }
+            joined.append(values.get(i));
+        }
+        return joined.toString();
+    }
+}
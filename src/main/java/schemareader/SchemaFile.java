@@ -27,37 +27,92 @@
  */
 package schemareader;
 
-import com.sun.xml.xsom.XSElementDecl;
+import com.sun.xml.xsom.XSSchemaSet;
+import com.sun.xml.xsom.parser.SchemaDocument;
 import com.sun.xml.xsom.parser.XSOMParser;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
-import java.math.BigInteger;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.regex.Pattern;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.xml.XMLConstants;
-import javax.xml.transform.Source;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
 /**
  * SchemaFile is a class used to parse xsd schema files. It contains several
  * methods to validate an xml file, create xml templates or simply get element
  * names given a xpath.
+ * <p>
+ * A SchemaFile is thread-safe once constructed, so a single instance can serve
+ * concurrent requests. The xsd is compiled once and shared, while validation
+ * runs on Validators borrowed from a bounded pool (a Validator itself is not
+ * thread-safe), so concurrent validate calls do not build a new validator
+ * stack per request.
+ * <p>
+ * A lazy SchemaFile parses its xsd on first use. Parsing and compiling the
+ * validation grammar can also be done ahead of use, concurrently for many
+ * SchemaFiles, with warmUp.
+ * <p>
+ * The xsd and its imports/includes are read through a SchemaResourceResolver,
+ * never from the network, and documents shared by many SchemaFiles are read
+ * once.
  *
  * @author samarita
  */
 public class SchemaFile {
 
-    XSOMParser parser = new XSOMParser();
+    /**
+     * Default maximum number of idle Validators kept per SchemaFile
+     */
+    public static final int DEFAULT_VALIDATOR_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    /**
+     * Default number of times a recursive element is expanded on a single path
+     */
+    public static final int DEFAULT_RECURSION_DEPTH = 1;
+    /**
+     * Default maximum number of xml templates kept per SchemaFile
+     */
+    public static final int DEFAULT_TEMPLATE_CACHE_SIZE = 256;
+
+    volatile XSSchemaSet schemaSet;
     String xsdFilePath;
+    private volatile Schema schema;
+    private final ValidatorPool validatorPool;
+    private final int recursionDepth;
+    private final int templateCacheSize;
+    private volatile SchemaModel model;
+    private final Object reloadLock = new Object();
+    private final SchemaResourceResolver resolver;
 
     /**
      * SchemaFile constructor
@@ -65,176 +120,538 @@ public class SchemaFile {
      * @param xsdFile Absolute path of xsd file as a <code>String</code>
      */
     public SchemaFile(String xsdFile) {
-        try {
-            this.xsdFilePath = xsdFile;
-            parser.parse(xsdFile);
-        } catch (Exception exp) {
-            exp.printStackTrace(System.out);
-        }
+        this(xsdFile, DEFAULT_VALIDATOR_POOL_SIZE);
     }
 
     /**
-     * Gets all element names of SchemaFile
+     * SchemaFile constructor
      *
-     * @return All element names as a <code>ArrayList</code>
+     * @param xsdFile Absolute path of xsd file as a <code>String</code>
+     * @param validatorPoolSize Maximum number of idle Validators to keep as an
+     * <code>int</code>
      */
-    public ArrayList<String> getElements() {
-        ArrayList<String> elements = new ArrayList<String>();
-        try {
-            Iterator jtr = this.parser.getResult().getSchema(1).iterateElementDecls();
-            while (jtr.hasNext()) {
-                XSElementDecl e = (XSElementDecl) jtr.next();
-                elements.add(e.getName());
+    public SchemaFile(String xsdFile, int validatorPoolSize) {
+        this(xsdFile, validatorPoolSize, DEFAULT_RECURSION_DEPTH);
+    }
+
+    /**
+     * SchemaFile constructor
+     *
+     * @param xsdFile Absolute path of xsd file as a <code>String</code>
+     * @param validatorPoolSize Maximum number of idle Validators to keep as an
+     * <code>int</code>
+     * @param recursionDepth How many times a recursive element is expanded on
+     * a single path as an <code>int</code> (deeper occurences are kept but not
+     * expanded, see Element.isRecursive)
+     */
+    public SchemaFile(String xsdFile, int validatorPoolSize, int recursionDepth) {
+        this(xsdFile, validatorPoolSize, recursionDepth, DEFAULT_TEMPLATE_CACHE_SIZE);
+    }
+
+    /**
+     * SchemaFile constructor
+     *
+     * @param xsdFile Absolute path of xsd file as a <code>String</code>
+     * @param validatorPoolSize Maximum number of idle Validators to keep as an
+     * <code>int</code>
+     * @param recursionDepth How many times a recursive element is expanded on
+     * a single path as an <code>int</code> (deeper occurences are kept but not
+     * expanded, see Element.isRecursive)
+     * @param templateCacheSize Maximum number of xml templates to keep as an
+     * <code>int</code> (0 disables the cache)
+     */
+    public SchemaFile(String xsdFile, int validatorPoolSize, int recursionDepth, int templateCacheSize) {
+        this(xsdFile, validatorPoolSize, recursionDepth, templateCacheSize, false);
+    }
+
+    /**
+     * SchemaFile constructor
+     *
+     * @param xsdFile Absolute path of xsd file as a <code>String</code>
+     * @param lazy If xsd should be parsed on first use (or by warmUp)
+     * <code>true</code>, else <code>false</code>
+     */
+    public SchemaFile(String xsdFile, boolean lazy) {
+        this(xsdFile, DEFAULT_VALIDATOR_POOL_SIZE, DEFAULT_RECURSION_DEPTH, DEFAULT_TEMPLATE_CACHE_SIZE, lazy);
+    }
+
+    /**
+     * SchemaFile constructor
+     *
+     * @param xsdFile Absolute path of xsd file as a <code>String</code>
+     * @param validatorPoolSize Maximum number of idle Validators to keep as an
+     * <code>int</code>
+     * @param recursionDepth How many times a recursive element is expanded on
+     * a single path as an <code>int</code> (deeper occurences are kept but not
+     * expanded, see Element.isRecursive)
+     * @param templateCacheSize Maximum number of xml templates to keep as an
+     * <code>int</code> (0 disables the cache)
+     * @param lazy If xsd should be parsed on first use (or by warmUp)
+     * <code>true</code>, else <code>false</code>
+     */
+    public SchemaFile(String xsdFile, int validatorPoolSize, int recursionDepth, int templateCacheSize, boolean lazy) {
+        this(xsdFile, validatorPoolSize, recursionDepth, templateCacheSize, lazy, SchemaResourceResolver.getDefault());
+    }
+
+    /**
+     * SchemaFile constructor
+     *
+     * @param xsdFile Absolute path of xsd file as a <code>String</code>
+     * @param resolver Resolver of xsd and imported/included xsds as a
+     * <code>SchemaResourceResolver</code>
+     */
+    public SchemaFile(String xsdFile, SchemaResourceResolver resolver) {
+        this(xsdFile, DEFAULT_VALIDATOR_POOL_SIZE, DEFAULT_RECURSION_DEPTH, DEFAULT_TEMPLATE_CACHE_SIZE, false, resolver);
+    }
 
+    /**
+     * SchemaFile constructor
+     *
+     * @param xsdFile Absolute path of xsd file as a <code>String</code>
+     * @param validatorPoolSize Maximum number of idle Validators to keep as an
+     * <code>int</code>
+     * @param recursionDepth How many times a recursive element is expanded on
+     * a single path as an <code>int</code> (deeper occurences are kept but not
+     * expanded, see Element.isRecursive)
+     * @param templateCacheSize Maximum number of xml templates to keep as an
+     * <code>int</code> (0 disables the cache)
+     * @param lazy If xsd should be parsed on first use (or by warmUp)
+     * <code>true</code>, else <code>false</code>
+     * @param resolver Resolver of xsd and imported/included xsds as a
+     * <code>SchemaResourceResolver</code> (the default one is shared by all
+     * SchemaFiles created without one)
+     */
+    public SchemaFile(String xsdFile, int validatorPoolSize, int recursionDepth, int templateCacheSize, boolean lazy, SchemaResourceResolver resolver) {
+        this.resolver = resolver;
+        this.validatorPool = new ValidatorPool(validatorPoolSize);
+        this.recursionDepth = recursionDepth;
+        this.templateCacheSize = templateCacheSize;
+        this.xsdFilePath = xsdFile;
+        if (!lazy) {
+            try {
+                load();
+            } catch (Exception exp) {
+                exp.printStackTrace(System.out);
             }
-            return elements;
-        } catch (SAXException ex) {
-            ex.printStackTrace();
-            return null;
         }
-
     }
 
     /**
-     * Validates an xml against a SchemaFile
+     * Reloads SchemaFile after its xsd (or an imported/included xsd) has
+     * changed. Element trees, cached templates and the compiled validation
+     * grammar of the old xsd are dropped; calls already running finish with
+     * the old ones. If the xsd cannot be parsed, SchemaFile is left as it was.
      *
-     * @param xml Xml content as a <code>String</code>
-     * @param lang Message language as a <code>String</code> ("gr","en" for now)
-     * @return Validation message as a <code>String</code>
+     * @return If xsd was reloaded <code>true</code>, else <code>false</code>
      */
-    public String validate(String xml, String lang) {
-        String output = "Valid xml.";
-        if (lang.equals("gr")) {
-            output = "Το xml είναι έγκυρο.";
+    public boolean reload() {
+        synchronized (this.reloadLock) { //Not this, validations compiling the grammar would wait for the parse (only the grammar is dropped under this)
+            try {
+                return load();
+            } catch (Exception exp) {
+                exp.printStackTrace(System.out);
+                return false;
+            }
         }
-        String invalidXMLPart = "";
-        File schemaFile = new File(this.xsdFilePath);
+    }
 
-        StringReader reader = new StringReader(xml);
+    /**
+     * Parses xsd and replaces element trees, cached templates and compiled
+     * grammar
+     */
+    private boolean load() throws SAXException, IOException {
+        boolean reloading = this.model != null;
+        final SAXParseException[] firstError = new SAXParseException[1];
+        XSOMParser parser = new XSOMParser();
+        parser.setErrorHandler(new ErrorHandler() {
+            @Override
+            public void warning(SAXParseException exception) {
+            }
 
-        Source xmlFile = new StreamSource(reader);
-        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            @Override
+            public void error(SAXParseException exception) {
+                if (firstError[0] == null) {
+                    firstError[0] = exception;
+                }
+            }
 
-        MyErrorHandler myErrorHandler = new MyErrorHandler();
-        Validator validator = null;
+            @Override
+            public void fatalError(SAXParseException exception) {
+                error(exception);
+            }
+        });
+        parser.setEntityResolver(this.resolver);
         try {
-            Schema schema = schemaFactory.newSchema(schemaFile);
-            validator = schema.newValidator();
-            validator.setErrorHandler(myErrorHandler);
-            validator.validate(xmlFile);
-
-        } catch (IOException ex) {
-        } catch (SAXException e) {
-            e.printStackTrace();
-            if (myErrorHandler.getLog().contains("Line: ")) {
-                String errorMsg = myErrorHandler.getLog();
-                String lineNumber = errorMsg.substring(errorMsg.lastIndexOf("Line: "), errorMsg.lastIndexOf("Column: ")).replaceAll("Line:\\s*", "").trim();
-
-                LinkedHashMap<Integer, String> xmlLines = getXMLLineByLine(xml, Integer.parseInt(lineNumber));
-                int lineWithProblemIndex = Integer.parseInt(lineNumber);
-                String lineWithProblem = xmlLines.get(lineWithProblemIndex);
-                Utils utils = new Utils();
-                ArrayList<String> elements = utils.findReg("(?:<([^\\s]+)[^>]*/>|<([^\\s]+)[^>]*>(.*?)</\\2>)", lineWithProblem, Pattern.DOTALL);
-
-                int lineIndex = lineWithProblemIndex;
-                while (elements.size() < 1) {
-                    lineIndex = lineIndex - 1;
-                    if (lineIndex < lineWithProblemIndex - 30) { //Show last 30 lines...
-                        elements.add("...\n" + lineWithProblem + "\n...");
-                        break; //Bad bad bad, but then again who wants to wait forever?
-                    }
-                    lineWithProblem = xmlLines.get(lineIndex) + "\n" + lineWithProblem;
-
+            parser.parse(this.resolver.resolveDocument(this.xsdFilePath));
+        } catch (RuntimeException ex) { //XSOM goes on after a document it could not resolve, and fails
+            if (firstError[0] == null) {
+                throw ex;
+            }
+            throw firstError[0];
+        }
+        XSSchemaSet loaded;
+        try {
+            //getResult() post-processes the parsed schemas, so call it only once
+            loaded = parser.getResult();
+        } catch (InternalError ex) { //Unresolved reference, already reported as an error
+            loaded = null;
+        }
+        if (loaded == null) {
+            if (firstError[0] != null) {
+                throw firstError[0];
+            }
+            return false;
+        }
+        LinkedHashSet<String> files = new LinkedHashSet<String>();
+        File xsdFile = new File(this.xsdFilePath);
+        if (xsdFile.isFile()) { //Not always among the documents
+            files.add(xsdFile.getCanonicalPath());
+        }
+        for (SchemaDocument document : parser.getDocuments()) {
+            if (document.getSystemId() == null) {
+                continue;
+            }
+            try {
+                URI uri = new URI(document.getSystemId());
+                if ("file".equals(uri.getScheme())) {
+                    files.add(new File(uri).getCanonicalPath());
                 }
+            } catch (URISyntaxException | IllegalArgumentException ex) { //Not a local file
+            }
+        }
+        List<String> sources = Collections.unmodifiableList(new ArrayList<String>(files));
+        long[] stamps = null; //Content is read only if a snapshot is saved
+        try {
+            stamps = ModelSnapshot.stamps(sources);
+        } catch (IOException ex) { //Model cannot be saved as a snapshot
+        }
+        this.model = new SchemaModel(loaded, this.recursionDepth, this.templateCacheSize, sources, stamps);
+        this.schemaSet = loaded;
+        if (reloading) {
+            synchronized (this) { //Same monitor as getSchema, so a compile of the old xsd still running cannot store its grammar afterwards
+                this.schema = null; //Compiled again on next validation
+            }
+        }
+        return true;
+    }
 
-                if (!elements.isEmpty()) {
-                    if (lang.equals("gr")) {
-                        invalidXMLPart = "\nΠροβληματικό τμήμα: " + elements.get(0);
-                    } else {
-                        invalidXMLPart = "\nPart with error: " + elements.get(0);
+    /**
+     * Gets element model, parsing xsd if not parsed yet
+     *
+     * @return Model as a <code>SchemaModel</code>
+     * @throws IllegalStateException If xsd cannot be parsed
+     */
+    SchemaModel getModel() {
+        SchemaModel current = this.model;
+        if (current == null) {
+            try {
+                parse();
+            } catch (SAXException | IOException ex) {
+                throw new IllegalStateException("Cannot parse " + this.xsdFilePath, ex);
+            }
+            current = this.model;
+        }
+        return current;
+    }
 
+    /**
+     * Gets XSOM result of xsd, parsing xsd if not parsed yet or if the element
+     * model was read from a snapshot
+     *
+     * @return Schema set as a <code>XSSchemaSet</code>
+     * @throws IllegalStateException If xsd cannot be parsed
+     */
+    XSSchemaSet getSchemaSet() {
+        XSSchemaSet current = getModel().getSchemaSet();
+        if (current == null) { //Snapshot models have no XSOM result
+            synchronized (this.reloadLock) {
+                current = this.model.getSchemaSet();
+                if (current == null) {
+                    try {
+                        if (!load()) {
+                            throw new SAXException("Cannot parse " + this.xsdFilePath);
+                        }
+                    } catch (SAXException | IOException ex) {
+                        throw new IllegalStateException("Cannot parse " + this.xsdFilePath, ex);
                     }
+                    current = this.model.getSchemaSet();
                 }
-
             }
-            if (lang.equals("gr")) {
-                output = "Το xml δεν είναι έγκυρο. Πιο αναλυτικά:\n" + myErrorHandler.getLog();
-            } else {
-                output = "Invalid xml:\n" + myErrorHandler.getLog();
+        }
+        return current;
+    }
 
+    /**
+     * Parses xsd if not parsed yet
+     *
+     * @return Time spent parsing in nanoseconds (0 if already parsed)
+     */
+    private long parse() throws SAXException, IOException {
+        synchronized (this.reloadLock) {
+            if (this.model != null) {
+                return 0;
             }
-            output = output + invalidXMLPart;
+            long start = System.nanoTime();
+            if (!load()) {
+                throw new SAXException("Cannot parse " + this.xsdFilePath);
+            }
+            return System.nanoTime() - start;
         }
-        return output;
     }
 
     /**
-     * Validates an xml against a SchemaFile
+     * Compiles validation grammar if not compiled yet
      *
-     * @param xml Xml content as a <code>String</code>
-     * @return If valid <code>true</code>, else <code>false</code>
+     * @return Time spent compiling in nanoseconds (0 if already compiled)
      */
-    public boolean validate(String xml) {
-        boolean isValid = false;
+    private long compile() throws SAXException {
+        if (this.schema != null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        getSchema();
+        return System.nanoTime() - start;
+    }
 
-        File schemaFile = new File(this.xsdFilePath);
+    /**
+     * Parses xsd and compiles validation grammar now, instead of on first use
+     *
+     * @return Time spent as a <code>LoadTiming</code>
+     * @throws SAXException If xsd cannot be parsed or compiled
+     * @throws IOException If xsd cannot be read
+     */
+    public LoadTiming warmUp() throws SAXException, IOException {
+        long parseNanos = parse();
+        long compileNanos = compile();
+        return new LoadTiming(this.xsdFilePath, parseNanos, compileNanos);
+    }
 
-        StringReader reader = new StringReader(xml);
+    /**
+     * Parses xsd and compiles validation grammar concurrently, as two tasks of
+     * an executor
+     *
+     * @param executor Executor to run on as an <code>ExecutorService</code>
+     * @return Time spent as a <code>Future</code>, failing with the
+     * SAXException or IOException of a failed step
+     */
+    public Future<LoadTiming> warmUp(ExecutorService executor) {
+        Future<Long> parsing = executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws SAXException, IOException {
+                return parse();
+            }
+        });
+        Future<Long> compiling = executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws SAXException {
+                return compile();
+            }
+        });
+        return new WarmUp(parsing, compiling);
+    }
 
-        Source xmlFile = new StreamSource(reader);
-        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+    /**
+     * Parses xsds and compiles validation grammars of several SchemaFiles
+     * concurrently on an executor, waiting until all are done
+     *
+     * @param schemaFiles SchemaFiles to load as a <code>Collection</code>
+     * @param executor Executor to run on as an <code>ExecutorService</code>
+     * @return Time spent per SchemaFile, in the same order, as a
+     * <code>List</code>
+     * @throws ExecutionException If a SchemaFile cannot be loaded (the cause
+     * is the SAXException or IOException of the first failed SchemaFile)
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public static List<LoadTiming> warmUp(Collection<SchemaFile> schemaFiles, ExecutorService executor) throws ExecutionException, InterruptedException {
+        ArrayList<Future<LoadTiming>> loading = new ArrayList<Future<LoadTiming>>();
+        for (SchemaFile schemaFile : schemaFiles) {
+            loading.add(schemaFile.warmUp(executor));
+        }
+        ArrayList<LoadTiming> timings = new ArrayList<LoadTiming>();
+        for (Future<LoadTiming> future : loading) {
+            timings.add(future.get());
+        }
+        return timings;
+    }
 
-        MyErrorHandler myErrorHandler = new MyErrorHandler();
-        Validator validator = null;
-        try {
-            Schema schema = schemaFactory.newSchema(schemaFile);
-            validator = schema.newValidator();
-            validator.setErrorHandler(myErrorHandler);
-            validator.validate(xmlFile);
-            isValid = true;
+    /**
+     * Result of the two warmUp tasks of a SchemaFile
+     */
+    private class WarmUp implements Future<LoadTiming> {
 
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        } catch (SAXException ex) {
-            ex.printStackTrace();
+        private final Future<Long> parsing, compiling;
 
+        WarmUp(Future<Long> parsing, Future<Long> compiling) {
+            this.parsing = parsing;
+            this.compiling = compiling;
         }
-        return isValid;
-    }
 
-    private LinkedHashMap<Integer, String> getXMLLineByLine(String str, int lineNumber) {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = parsing.cancel(mayInterruptIfRunning);
+            return compiling.cancel(mayInterruptIfRunning) || cancelled;
+        }
 
-        LineNumberReader lineNumberReader = null;
-        LinkedHashMap<Integer, String> lineNumbersAndContent = new LinkedHashMap<Integer, String>();
+        @Override
+        public boolean isCancelled() {
+            return parsing.isCancelled() || compiling.isCancelled();
+        }
 
-        try {
+        @Override
+        public boolean isDone() {
+            return parsing.isDone() && compiling.isDone();
+        }
 
-            //Construct the LineNumberReader object
-            lineNumberReader = new LineNumberReader(new StringReader(str));
+        @Override
+        public LoadTiming get() throws InterruptedException, ExecutionException {
+            return new LoadTiming(xsdFilePath, parsing.get(), compiling.get());
+        }
 
-            String line = null;
+        @Override
+        public LoadTiming get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            long parseNanos = parsing.get(timeout, unit);
+            long compileNanos = compiling.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return new LoadTiming(xsdFilePath, parseNanos, compileNanos);
+        }
+    }
 
-            while ((line = lineNumberReader.readLine()) != null) {
+    /**
+     * Gets canonical paths of the local files the xsd was parsed from (the xsd
+     * and the files it imports or includes)
+     *
+     * @return File paths as a <code>List</code>
+     */
+    List<String> getSourceFiles() {
+        SchemaModel current = this.model;
+        return current == null ? Collections.<String>emptyList() : current.sourceFiles;
+    }
 
-                if (lineNumberReader.getLineNumber() <= lineNumber) {
-                    lineNumbersAndContent.put(lineNumberReader.getLineNumber(), line);
+    /**
+     * Gets canonical path of the local file the xsd is read from (after
+     * catalog lookup)
+     *
+     * @return File path as a <code>String</code> (null if xsd is not a local
+     * file)
+     */
+    private String getXsdSourceFile() {
+        try {
+            String systemId = this.resolver.resolveDocument(this.xsdFilePath).getSystemId();
+            if (systemId != null) {
+                URI uri = new URI(systemId);
+                if ("file".equals(uri.getScheme())) {
+                    return new File(uri).getCanonicalPath();
                 }
             }
+        } catch (IOException | URISyntaxException | IllegalArgumentException ex) { //Not available or not a local file
+        }
+        return null;
+    }
 
-        } catch (FileNotFoundException ex) {
-        } catch (IOException ex) {
-        } finally {
-            //Close the BufferedWriter
-            try {
-                if (lineNumberReader != null) {
-                    lineNumberReader.close();
+    /**
+     * Replaces the element model with the one saved in a snapshot file (see
+     * saveSnapshot), if the snapshot is still valid: saved from the same
+     * (local) xsd, same recursion depth and the xsd and all files it imports or
+     * includes unchanged. The snapshot is
+     * read through a memory-mapped buffer and XSOM is not used, so
+     * getElements, createXMLSubtree and createLabelsAndLinksFile are served
+     * without parsing the xsd. Validation still compiles the xsd.
+     *
+     * @param snapshotFile Snapshot file as a <code>Path</code>
+     * @return If snapshot was loaded <code>true</code>, else (missing, stale
+     * or corrupt snapshot) <code>false</code>
+     */
+    public boolean loadSnapshot(Path snapshotFile) {
+        synchronized (this.reloadLock) {
+            SchemaModel loaded = ModelSnapshot.read(snapshotFile, getXsdSourceFile(), this.recursionDepth, this.templateCacheSize);
+            if (loaded == null) {
+                return false;
+            }
+            this.model = loaded;
+            this.schemaSet = null;
+            return true;
+        }
+    }
+
+    /**
+     * Saves the element model (trees of all root elements, with occurences,
+     * model groups, attributes and restrictions) to a snapshot file, parsing
+     * the xsd if not parsed yet. The file is replaced at once, so concurrent
+     * readers see either the old or the new snapshot.
+     *
+     * @param snapshotFile Snapshot file as a <code>Path</code>
+     * @throws IOException If snapshot cannot be written, or the xsd (or a file
+     * it imports or includes) changed since it was parsed (reload first)
+     */
+    public void saveSnapshot(Path snapshotFile) throws IOException {
+        ModelSnapshot.write(getModel(), snapshotFile);
+    }
+
+    /**
+     * Checks if xsd was parsed (at construction or by a later reload)
+     */
+    boolean isLoaded() {
+        return this.model != null;
+    }
+
+    /**
+     * Gets the compiled validation grammar of SchemaFile. The xsd (and its
+     * imports/includes) is compiled once, on first use, and the immutable
+     * result is shared by all validate calls.
+     *
+     * @return Compiled grammar as a <code>Schema</code>
+     * @throws SAXException If xsd file cannot be compiled
+     */
+    Schema getSchema() throws SAXException {
+        Schema compiled = this.schema;
+        if (compiled == null) {
+            synchronized (this) {
+                compiled = this.schema;
+                if (compiled == null) {
+                    SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+                    schemaFactory.setResourceResolver(this.resolver);
+                    InputSource xsd;
+                    try {
+                        xsd = this.resolver.resolveDocument(this.xsdFilePath);
+                    } catch (IOException ex) {
+                        throw new SAXException(ex);
+                    }
+                    compiled = schemaFactory.newSchema(new StreamSource(xsd.getByteStream(), xsd.getSystemId()));
+                    this.schema = compiled;
                 }
-            } catch (IOException ex) {
-                ex.printStackTrace();
             }
         }
+        return compiled;
+    }
 
-        return lineNumbersAndContent;
+    /**
+     * Gets all element names of SchemaFile
+     *
+     * @return All element names as a <code>ArrayList</code>
+     */
+    public ArrayList<String> getElements() {
+        return new ArrayList<String>(getModel().getRootNames());
+    }
+
+    /**
+     * Validates an xml against a SchemaFile
+     *
+     * @param xml Xml content as a <code>String</code>
+     * @param lang Message language as a <code>String</code> ("gr","en" for now)
+     * @return Validation message as a <code>String</code>
+     */
+    public String validate(String xml, String lang) {
+        return validateAll(xml, 1).render(lang);
+    }
+
+    /**
+     * Validates an xml against a SchemaFile
+     *
+     * @param xml Xml content as a <code>String</code>
+     * @return If valid <code>true</code>, else <code>false</code>
+     */
+    public boolean validate(String xml) {
+        return validateAll(xml, 1).isValid();
     }
 
     /**
@@ -245,37 +662,163 @@ public class SchemaFile {
      * @return Validation message as a <code>String</code>
      */
     public String validate(File xmlFile, String lang) {
-        String xmlFilePath = xmlFile.getPath();
-        String output = "File " + xmlFilePath + " is valid.";
-        if (lang.equals("gr")) {
-            output = "Το αρχείο " + xmlFilePath + " είναι έγκυρο.";
-        }
+        return validateAll(xmlFile, 1).render(lang);
+    }
+
+    /**
+     * Validates an xml file against a SchemaFile. The file is streamed, so
+     * memory use does not depend on its size.
+     *
+     * @param xmlFile Xml content as a <code>Path</code>
+     * @param lang Message language as a <code>String</code> ("gr","en" for now)
+     * @return Validation message as a <code>String</code>
+     */
+    public String validate(Path xmlFile, String lang) {
+        return validateAll(xmlFile, 1).render(lang);
+    }
 
-        File schemaFile = new File(this.xsdFilePath);
+    /**
+     * Validates an xml stream against a SchemaFile. The stream is validated in
+     * a single pass and is closed when validation ends.
+     *
+     * @param xml Xml content as an <code>InputStream</code>
+     * @param lang Message language as a <code>String</code> ("gr","en" for now)
+     * @return Validation message as a <code>String</code>
+     */
+    public String validate(InputStream xml, String lang) {
+        return validateAll(xml, 1).render(lang);
+    }
 
-        Source xmlFileSource = new StreamSource(xmlFile);
+    /**
+     * Validates an xml stream against a SchemaFile. The stream is validated in
+     * a single pass and is closed when validation ends.
+     *
+     * @param xml Xml content as an <code>InputStream</code>
+     * @return If valid <code>true</code>, else <code>false</code>
+     */
+    public boolean validate(InputStream xml) {
+        return validateAll(xml, 1).isValid();
+    }
 
-        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        MyErrorHandler myErrorHandler = new MyErrorHandler();
-        try {
-            Schema schema = schemaFactory.newSchema(schemaFile);
-            Validator validator = schema.newValidator();
-            validator.setErrorHandler(myErrorHandler);
-            validator.validate(xmlFileSource);
+    /**
+     * Validates xml read from a channel against a SchemaFile. The channel is
+     * validated in a single pass and is closed when validation ends.
+     *
+     * @param xml Xml content as a <code>ReadableByteChannel</code>
+     * @param lang Message language as a <code>String</code> ("gr","en" for now)
+     * @return Validation message as a <code>String</code>
+     */
+    public String validate(ReadableByteChannel xml, String lang) {
+        return validate(Channels.newInputStream(xml), lang);
+    }
 
-        } catch (IOException ex) {
-        } catch (SAXException e) {
-            System.out.println("--");
+    /**
+     * Validates an xml against a SchemaFile, collecting up to maxErrors errors
+     * before stopping
+     *
+     * @param xml Xml content as a <code>String</code>
+     * @param maxErrors Maximum number of errors as an <code>int</code> (1 stops
+     * at first error)
+     * @return Validation result as a <code>ValidationResult</code>
+     */
+    public ValidationResult validateAll(String xml, int maxErrors) {
+        return validateSource(new InputSource(new StringReader(xml)), maxErrors, null);
+    }
+
+    /**
+     * Validates an xml stream against a SchemaFile, collecting up to maxErrors
+     * errors before stopping. The stream is closed when validation ends.
+     *
+     * @param xml Xml content as an <code>InputStream</code>
+     * @param maxErrors Maximum number of errors as an <code>int</code> (1 stops
+     * at first error)
+     * @return Validation result as a <code>ValidationResult</code>
+     */
+    public ValidationResult validateAll(InputStream xml, int maxErrors) {
+        return validateSource(new InputSource(xml), maxErrors, null);
+    }
+
+    /**
+     * Validates xml read from a channel against a SchemaFile, collecting up to
+     * maxErrors errors before stopping. The channel is closed when validation
+     * ends.
+     *
+     * @param xml Xml content as a <code>ReadableByteChannel</code>
+     * @param maxErrors Maximum number of errors as an <code>int</code> (1 stops
+     * at first error)
+     * @return Validation result as a <code>ValidationResult</code>
+     */
+    public ValidationResult validateAll(ReadableByteChannel xml, int maxErrors) {
+        return validateAll(Channels.newInputStream(xml), maxErrors);
+    }
 
-            output = output = "File " + xmlFilePath + " is not valid:\n" + myErrorHandler.getLog();
-            if (lang.equals("gr")) {
-                output = "Το αρχείο " + xmlFilePath + " δεν είναι έγκυρο. Πιο αναλυτικά:\n" + myErrorHandler.getLog();
+    /**
+     * Validates an xml file against a SchemaFile, collecting up to maxErrors
+     * errors before stopping
+     *
+     * @param xmlFile Xml content as a <code>File</code>
+     * @param maxErrors Maximum number of errors as an <code>int</code> (1 stops
+     * at first error)
+     * @return Validation result as a <code>ValidationResult</code>
+     */
+    public ValidationResult validateAll(File xmlFile, int maxErrors) {
+        return validateFile(xmlFile.toPath(), xmlFile.getPath(), xmlFile.toURI().toASCIIString(), maxErrors);
+    }
+
+    /**
+     * Validates an xml file against a SchemaFile, collecting up to maxErrors
+     * errors before stopping
+     *
+     * @param xmlFile Xml content as a <code>Path</code>
+     * @param maxErrors Maximum number of errors as an <code>int</code> (1 stops
+     * at first error)
+     * @return Validation result as a <code>ValidationResult</code>
+     */
+    public ValidationResult validateAll(Path xmlFile, int maxErrors) {
+        return validateFile(xmlFile, xmlFile.toString(), xmlFile.toUri().toASCIIString(), maxErrors);
+    }
+
+    private ValidationResult validateFile(Path xmlFile, String xmlFilePath, String systemId, int maxErrors) {
+        InputStream in = null;
+        try {
+            in = Files.newInputStream(xmlFile);
+            InputSource source = new InputSource(in);
+            source.setSystemId(systemId);
+            return validateSource(source, maxErrors, xmlFilePath);
+        } catch (IOException ex) {
+            return new ValidationResult(new ArrayList<ValidationError>(), false, xmlFilePath, String.valueOf(ex.getMessage()));
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
             }
+        }
+    }
 
-//            e.printStackTrace();
+    /**
+     * Validates xml in a single streaming pass on a pooled validator
+     */
+    private ValidationResult validateSource(InputSource source, int maxErrors, String documentName) {
+        ValidatorPool.PooledValidator pooled = null;
+        try {
+            pooled = validatorPool.borrow(getSchema());
+            pooled.validate(source, maxErrors);
+            MyErrorHandler errorHandler = pooled.errorHandler;
+            return new ValidationResult(errorHandler.getErrors(), errorHandler.isStopped(), documentName, null);
+        } catch (SAXException ex) { //Schema could not be compiled
+            ArrayList<ValidationError> errors = new ArrayList<ValidationError>();
+            errors.add(new ValidationError(ValidationError.Severity.FATAL, -1, -1, ex.getMessage(), this.xsdFilePath, null, null));
+            return new ValidationResult(errors, true, documentName, null);
+        } catch (IOException ex) {
+            return new ValidationResult(new ArrayList<ValidationError>(), false, documentName, String.valueOf(ex.getMessage()));
+        } finally {
+            if (pooled != null) {
+                validatorPool.release(pooled);
+            }
         }
-//        System.out.println(myErrorHandler.getLog());
-        return output;
     }
 
     /**
@@ -287,221 +830,220 @@ public class SchemaFile {
      * @return LabelsAndLinksFile content as a <code>String</code>
      */
     public String createLabelsAndLinksFile(String type, String xpath, String lang) {
-        StringBuilder output = new StringBuilder("<nodes>");
-        ArrayList<Element> elements = new ArrayList<Element>();
-        if (xpath.contains("/")) {
-            elements = getElements(xpath.substring(0, xpath.lastIndexOf("/")));
-        } else {
-
-            try {
-                elements = getElements(type);
-            } catch (NullPointerException ex) { //Old type entities (Authentic)
-                elements = getElements("Οντότητα");
-            }
+        return createLabelsAndLinksFile(getModel(), type, xpath, lang);
+    }
 
+    String createLabelsAndLinksFile(SchemaModel current, String type, String xpath, String lang) {
+        StringBuilder output = new StringBuilder();
+        try {
+            writeLabelsAndLinksFile(current, type, xpath, lang, FacetConfig.DEFAULT, output);
+        } catch (IOException ex) { //StringBuilder does not throw
+            ex.printStackTrace();
         }
+        return output.toString();
+    }
 
-        for (Element el : elements) {
-
-            if (!el.fullPath.contains("/admin")) {
-
-                StringBuilder temp = new StringBuilder("<node type=\"" + type + "\">\r\n<xpath>" + el.fullPath + "</xpath>\r\n");
-                String vocabulary = "";
-
-                if (lang.equals("gr")) {
-                    temp = temp.append("<gr>").append(el.name).append("</gr>\r\n<en></en>\r\n");
+    /**
+     * Writes LabelsAndLinksFile to use in eXist (strictly FeXML method!)
+     *
+     * @param type Entity type as a <code>String</code>
+     * @param xpath Xpath as a <code>String</code>
+     * @param lang Language as a <code>String</code>
+     * @param facetConfig Thesaurus of facet elements as a
+     * <code>FacetConfig</code>
+     * @param out Output as a <code>Writer</code>
+     * @throws IOException If output fails
+     */
+    public void createLabelsAndLinksFile(String type, String xpath, String lang, FacetConfig facetConfig, Writer out) throws IOException {
+        writeLabelsAndLinksFile(getModel(), type, xpath, lang, facetConfig, out);
+    }
 
-                } else if (lang.equals("en")) {
-                    temp = temp.append("<gr></gr>\r\n<en>").append(el.name).append("</en>\r\n");
+    /**
+     * Writes LabelsAndLinksFile to use in eXist (strictly FeXML method!) as
+     * UTF-8. The stream is flushed but not closed.
+     *
+     * @param type Entity type as a <code>String</code>
+     * @param xpath Xpath as a <code>String</code>
+     * @param lang Language as a <code>String</code>
+     * @param facetConfig Thesaurus of facet elements as a
+     * <code>FacetConfig</code>
+     * @param out Output as an <code>OutputStream</code>
+     * @throws IOException If output fails
+     */
+    public void createLabelsAndLinksFile(String type, String xpath, String lang, FacetConfig facetConfig, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        writeLabelsAndLinksFile(getModel(), type, xpath, lang, facetConfig, writer);
+        writer.flush();
+    }
 
-                }
-                if (el.attributes.containsKey("ics_vocabulary") || el.attributes.containsKey("sps_vocabulary")) {
-                    vocabulary = el.name + ".xml";
-                    temp = temp.append("<vocabulary>").append(vocabulary).append("</vocabulary>\r\n");
-                }
-                if (el.attributes.containsKey("ics_type") || el.attributes.containsKey("sps_type")) {
-                    temp = temp.append("<valueFrom type=\"\"></valueFrom>\r\n");
-                }
-                if (el.attributes.containsKey("sps_facet")) {
-                    temp = temp.append("<facet username=\"ExternalReader\" themasUrl=\"http://139.91.183.97:8080/THEMAS/\" thesaurusName=\"TESTDATA\" facetId=\"\"/>\r\n");
-                }
-                output.append(temp).append("</node>");
+    private void writeLabelsAndLinksFile(SchemaModel current, String type, String xpath, String lang, FacetConfig facetConfig, Appendable out) throws IOException {
+        ArrayList<Element> elements;
+        if (xpath.contains("/")) {
+            elements = current.getElements(xpath.substring(0, xpath.lastIndexOf("/")));
+        } else {
+            elements = current.getElements(type);
+            if (elements == null) { //Old type entities (Authentic)
+                elements = current.getElements("Οντότητα");
             }
         }
-
-        return output.append("</nodes>").toString();
+        new LabelsWriter(out, facetConfig).write(elements, type, lang);
     }
 
     /**
-     * Creates xml subtrees according to a SchemaFile
+     * Creates xml subtrees according to a SchemaFile. Templates are cached
+     * (see getTemplateCacheStats), so asking again for the same xpath and mode
+     * is a lookup.
      *
      * @param xpath Subtree root as a <code>String</code>
      * @param mode Creation mode as a <code>String</code> ("minimum","medium" or
      * "maximum" for now)
-     * @return
+     * @return Subtrees as a <code>String</code>
      */
     public String createXMLSubtree(String xpath, String mode) {
-        ArrayList<Element> elements = new ArrayList<Element>();
-        if (xpath.contains("/")) {
-            elements = getElements(xpath.substring(0, xpath.lastIndexOf("/")));
-        } else {
-            elements = getElements(xpath);
-        }
-        StringBuilder subtreeStart = new StringBuilder();
-        StringBuilder subtreeEnd = new StringBuilder();
-        ArrayList<String> endTags = new ArrayList<String>();
-
-        int depth = 0;
-        String endTag = "";
-        String elStart = "";
-        String elEnd = "";
-        boolean isChoice = false;
-        boolean firstInChoice = false;
-        boolean isRoot = true;
-        String optionalPath = "";
-        for (Element el : elements) {
+        return getTemplate(getModel(), xpath, mode);
+    }
 
-            if (el.getFullPath().equals(xpath) || el.getFullPath().startsWith(xpath + "/")) {
-
-                if (!optionalPath.equals("") && el.getFullPath().startsWith(optionalPath)) {
-                } else {
-                    if (!mode.equals("maximum")) { //added medium mode = maximum except opotional elements at admin part
-                        if (mode.equals("minimum")) {
-                            if (!isRoot && el.isOptional()) {
-                                optionalPath = el.getFullPath();
-                                continue;
-                            }
-                        } else {
-
-                            if (!isRoot && el.isOptional() && !el.name.equals("admin") && el.getFullPath().contains("admin")) {
-                                optionalPath = el.getFullPath();
-                                continue;
-                            }
-                        }
-                    }
+    private String getTemplate(SchemaModel current, String xpath, String mode) {
+        String template = current.templates.get(xpath, mode);
+        if (template == null) {
+            template = createTemplate(current, xpath, mode);
+            current.templates.put(xpath, mode, template);
+        }
+        return template;
+    }
 
-                    int currentDepth = el.getFullPath().split("/").length;
-                    String[] splitElem = el.toString().split("><");
-                    elStart = splitElem[0] + ">";
-                    elEnd = "<" + splitElem[1];
-                    if (!mode.equals("medium")) {
-
-                        if (el.info != null) {
-
-                            if (el.info.startsWith("Choice")) {
-                                if (isChoice == false) {
-                                    firstInChoice = true;
-                                } else {
-                                    firstInChoice = false;
-                                }
-                                isChoice = true;
-                            } else {
-                                isChoice = false;
-                                firstInChoice = false;
-
-                            }
-                        }
-                    }
-                    if (isChoice == false || (isChoice == true && firstInChoice == true)) {
-                        if (depth > 0 && currentDepth > depth) {
-                            subtreeStart = subtreeStart.append(elStart);
-                            endTags.add(0, endTag);
-                            endTag = elEnd;
-                        } else if (currentDepth < depth) {
-                            int depthDiff = depth - currentDepth;
-                            subtreeStart.append(endTag);
-
-                            for (int i = 0; i < depthDiff; i++) {
-                                if (!endTags.isEmpty()) {
-                                    subtreeStart.append(endTags.remove(0));
-                                }
-                            }
-                            subtreeStart.append(elStart);
-                        } else {
-
-                            subtreeStart = subtreeStart.append(endTag).append(elStart);
-                        }
-                        endTag = elEnd;
-                    }
-                    depth = currentDepth;
-                }
-                isRoot = false;
+    /**
+     * Creates xml subtrees without using the template cache
+     */
+    String createTemplate(SchemaModel current, String xpath, String mode) {
+        StringBuilder output = new StringBuilder();
+        ArrayList<Element> elements = current.getElements(xpath);
+        if (elements != null) {
+            try {
+                new TemplateWriter.ToAppendable(output).write(elements, mode);
+            } catch (IOException ex) { //StringBuilder does not throw
+                ex.printStackTrace();
             }
-
         }
-        StringBuilder restEndTags = new StringBuilder();
-        for (String end : endTags) {
-            restEndTags = restEndTags.append(end);
+        return output.toString();
+    }
+
+    /**
+     * Creates, in parallel, the xml templates of all root elements and all
+     * repeatable paths in all modes ("minimum","medium" and "maximum") and the
+     * LabelsAndLinksFile of all root elements. Templates are named
+     * "templates/&lt;mode&gt;/&lt;xpath&gt;.xml" and LabelsAndLinksFiles
+     * "labels/&lt;root&gt;.xml". The template cache is not used.
+     *
+     * @param lang LabelsAndLinksFile language as a <code>String</code>
+     * ("gr","en" for now)
+     * @param parallelism Number of threads to use as an <code>int</code>
+     * @return File contents, keyed and sorted by name, as a
+     * <code>SortedMap</code>
+     */
+    public SortedMap<String, String> createAllTemplatesAndLabels(String lang, int parallelism) {
+        BulkGenerator.MapOutput output = new BulkGenerator.MapOutput();
+        try {
+            new BulkGenerator(this, getModel(), lang, output).run(parallelism);
+        } catch (IOException ex) { //MapOutput does not throw
+            ex.printStackTrace();
         }
-        return subtreeStart.toString() + endTag + restEndTags + subtreeEnd.toString();
+        return new TreeMap<String, String>(output.files);
     }
 
     /**
-     * Gets element names of a SchemaFile subtree
+     * Creates, in parallel, the same files as
+     * createAllTemplatesAndLabels(lang, parallelism) and writes them (UTF-8)
+     * below a directory, creating subdirectories as needed
      *
-     * @param fullPath Subtree root as a <code>String</code>
-     * @return Subtree element names as a <code>ArrayList</code>
+     * @param lang LabelsAndLinksFile language as a <code>String</code>
+     * ("gr","en" for now)
+     * @param parallelism Number of threads to use as an <code>int</code>
+     * @param directory Output directory as a <code>Path</code>
+     * @throws IOException If a file cannot be written
      */
-    public ArrayList<Element> getElements(String fullPath) {
+    public void createAllTemplatesAndLabels(String lang, int parallelism, Path directory) throws IOException {
+        new BulkGenerator(this, getModel(), lang, new BulkGenerator.DirectoryOutput(directory)).run(parallelism);
+    }
 
-        try {
-            boolean getFullTree = false;
-            Handlers handlers = new Handlers(fullPath);
-            String root = fullPath;
-            if (fullPath.contains("/")) {
-                root = fullPath.substring(0, fullPath.indexOf("/"));
-            } else {
-                getFullTree = true;
-            }
+    /**
+     * Gets counters of the xml template cache. Counters start again from zero
+     * when SchemaFile is reloaded.
+     *
+     * @return Cache counters as a <code>CacheStats</code>
+     */
+    public CacheStats getTemplateCacheStats() {
+        return getModel().templates.getStats();
+    }
 
-            XSElementDecl element = null;
-            if (this.parser.getResult().getSchemas().size() > 1) {
-                element = this.parser.getResult().getSchema(1).getElementDecl(root);
-            } else {
-                element = this.parser.getResult().getSchema(0).getElementDecl(root);
-            }
-            Element rootElem = new Element(element, root, BigInteger.ONE, BigInteger.ONE);
-            if (getFullTree) {
-                handlers.elements.add(rootElem);
-            }
+    /**
+     * Writes xml subtrees according to a SchemaFile, in a single pass over the
+     * subtree elements. The template is streamed, not built in memory, so it
+     * is not cached (see createXMLSubtree(xpath, mode)).
+     *
+     * @param xpath Subtree root as a <code>String</code>
+     * @param mode Creation mode as a <code>String</code> ("minimum","medium" or
+     * "maximum" for now)
+     * @param out Output (e.g. a <code>Writer</code>) as an
+     * <code>Appendable</code>
+     * @throws IOException If output fails
+     */
+    public void createXMLSubtree(String xpath, String mode, Appendable out) throws IOException {
+        ArrayList<Element> elements = getElements(xpath);
+        if (elements != null) {
+            new TemplateWriter.ToAppendable(out).write(elements, mode);
+        }
+    }
 
-            if (element.getType().isComplexType()) {
-                handlers.handleAttributes(element.getType().asComplexType());
-                handlers.handleParticles(element.getType().asComplexType(), root);
-            } else {
+    /**
+     * Writes xml subtrees according to a SchemaFile as StAX events (no start
+     * or end document is written)
+     *
+     * @param xpath Subtree root as a <code>String</code>
+     * @param mode Creation mode as a <code>String</code> ("minimum","medium" or
+     * "maximum" for now)
+     * @param out Output as a <code>XMLStreamWriter</code>
+     * @throws XMLStreamException If output fails
+     */
+    public void createXMLSubtree(String xpath, String mode, XMLStreamWriter out) throws XMLStreamException {
+        ArrayList<Element> elements = getElements(xpath);
+        if (elements != null) {
+            new TemplateWriter.ToStream(out).write(elements, mode);
+        }
+    }
 
-                handlers.handleSimpleType(element.getType().asSimpleType());
-            }
+    /**
+     * Gets element names of a SchemaFile subtree. The element tree of each
+     * root element is built once and shared, so elements returned must not be
+     * modified.
+     *
+     * @param fullPath Subtree root as a <code>String</code>
+     * @return Subtree element names as a <code>ArrayList</code> (null if root
+     * element does not exist)
+     */
+    public ArrayList<Element> getElements(String fullPath) {
+        return getModel().getElements(fullPath);
+    }
 
-            ArrayList<String> list = new ArrayList<String>();
-            ArrayList<Element> pureElements = new ArrayList<Element>();
-            for (Element el : handlers.elements) {
-                if (el != null) {
-                    if (el.isDummy) {
-                        list.add(el.info);
-                    } else {
-                        if (!list.isEmpty()) {
-                            String listString = list.remove(list.size() - 1);
-
-                            String type = listString.substring(listString.indexOf("_") + 1);
-                            String index = listString.substring(0, listString.indexOf("_"));
-
-                            int howManyLeft = Integer.parseInt(index);
-                            howManyLeft = howManyLeft - 1;
-                            if (howManyLeft > 0) {
-                                list.add(howManyLeft + "_" + type);
-                            }
-                            el.setInfo(type);
-                        }
-                        pureElements.add(el);
-                    }
-                }
-            }
-            //  pureElements.remove(0);
-            return pureElements;
-        } catch (SAXException ex) {
-            ex.printStackTrace();
+    /**
+     * Gets paths of recursive elements in a SchemaFile subtree, that is
+     * elements not expanded because they already appear above themselves
+     *
+     * @param fullPath Subtree root as a <code>String</code>
+     * @return Recursive element paths as an <code>ArrayList</code> (null if
+     * root element does not exist)
+     */
+    public ArrayList<String> getRecursivePaths(String fullPath) {
+        ArrayList<Element> elements = getModel().getElements(fullPath);
+        if (elements == null) {
             return null;
         }
+        ArrayList<String> paths = new ArrayList<String>();
+        for (Element el : elements) {
+            if (el.isRecursive()) {
+                paths.add(el.getFullPath());
+            }
+        }
+        return paths;
     }
 }
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import com.sun.xml.xsom.XSElementDecl;
+import com.sun.xml.xsom.XSSchema;
+import com.sun.xml.xsom.XSSchemaSet;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SchemaModel is the element tree of a SchemaFile, built once from the XSOM
+ * result. The tree of each root element is built on first use and never
+ * changes afterwards, so it is shared by all threads. Elements are kept in
+ * document order together with the end of the subtree of each element, so
+ * getting the elements of a path skips whole sibling subtrees and costs about
+ * as much as the result, not as the schema.
+ * <p>
+ * Until the tree of a root is needed, a path below it is served by walking
+ * only that path and its subtree; such subtrees are kept until the tree of
+ * their root is built. After PATH_TREES_PER_ROOT different paths below a root
+ * (existing or not), the tree of the root is built and used for all its
+ * paths, so the kept subtrees are bounded.
+ * <p>
+ * A model can also be read from a snapshot (see ModelSnapshot), with the
+ * trees of all root elements and without the XSOM result.
+ * <p>
+ * Returned elements are shared and must not be modified. Templates generated
+ * from the model are cached with it, so they are dropped together with the
+ * model when the schema is reloaded.
+ *
+ * @author samarita
+ */
+class SchemaModel {
+
+    /**
+     * How many paths below a root are walked on their own before the tree of
+     * the root is built instead
+     */
+    static final int PATH_TREES_PER_ROOT = 16;
+    private final XSSchemaSet schemaSet;
+    private final int recursionDepth;
+    private final ConcurrentHashMap<String, Tree> trees = new ConcurrentHashMap<String, Tree>();
+    private final ConcurrentHashMap<String, Tree> pathTrees = new ConcurrentHashMap<String, Tree>();
+    private final ConcurrentHashMap<String, AtomicInteger> pathTreeCounts = new ConcurrentHashMap<String, AtomicInteger>();
+    private final List<String> rootNames;
+    final TemplateCache templates;
+    /**
+     * Canonical paths of the local files the model was built from
+     */
+    final List<String> sourceFiles;
+    /**
+     * Last modified time and size of sourceFiles when the model was built (null
+     * if they could not be read or model was read from a snapshot)
+     */
+    private final long[] sourceStamps;
+    /**
+     * Digest of the content of sourceFiles, computed when first needed (most
+     * models are never saved as snapshots)
+     */
+    private volatile byte[] sourceDigest;
+
+    SchemaModel(XSSchemaSet schemaSet, int recursionDepth, int templateCacheSize, List<String> sourceFiles, long[] sourceStamps) {
+        this.schemaSet = schemaSet;
+        this.recursionDepth = recursionDepth;
+        this.templates = new TemplateCache(templateCacheSize);
+        this.sourceFiles = sourceFiles;
+        this.sourceStamps = sourceStamps;
+        ArrayList<String> roots = new ArrayList<String>();
+        Iterator<XSElementDecl> decls = getUserSchema().iterateElementDecls();
+        while (decls.hasNext()) {
+            roots.add(decls.next().getName());
+        }
+        this.rootNames = Collections.unmodifiableList(roots);
+    }
+
+    /**
+     * SchemaModel constructor, for a model read from a snapshot. Trees of all
+     * root elements are given, so XSOM is never used.
+     */
+    SchemaModel(List<String> rootNames, Map<String, Tree> trees, int recursionDepth, int templateCacheSize, List<String> sourceFiles, byte[] sourceDigest) {
+        this.schemaSet = null;
+        this.recursionDepth = recursionDepth;
+        this.templates = new TemplateCache(templateCacheSize);
+        this.sourceFiles = sourceFiles;
+        this.sourceStamps = null;
+        this.sourceDigest = sourceDigest;
+        this.rootNames = Collections.unmodifiableList(new ArrayList<String>(rootNames));
+        this.trees.putAll(trees);
+    }
+
+    /**
+     * Gets XSOM result the model was built from
+     *
+     * @return Schema set as a <code>XSSchemaSet</code> (null if model was read
+     * from a snapshot)
+     */
+    XSSchemaSet getSchemaSet() {
+        return schemaSet;
+    }
+
+    /**
+     * Gets digest of the content of the files the model was built from,
+     * reading them on first call
+     *
+     * @return Digest as a <code>byte[]</code>
+     * @throws IOException If a file cannot be read or has changed since the
+     * model was built
+     */
+    byte[] getSourceDigest() throws IOException {
+        byte[] digest = this.sourceDigest;
+        if (digest == null) {
+            if (this.sourceStamps == null) {
+                throw new IOException("Source files of model could not be read");
+            }
+            if (!Arrays.equals(this.sourceStamps, ModelSnapshot.stamps(this.sourceFiles))) {
+                throw new IOException("Source files changed since model was built");
+            }
+            digest = ModelSnapshot.digest(this.sourceFiles);
+            if (!Arrays.equals(this.sourceStamps, ModelSnapshot.stamps(this.sourceFiles))) { //Changed while reading
+                throw new IOException("Source files changed since model was built");
+            }
+            this.sourceDigest = digest;
+        }
+        return digest;
+    }
+
+    int getRecursionDepth() {
+        return recursionDepth;
+    }
+
+    /**
+     * Gets elements of a subtree, subtree root included
+     *
+     * @param fullPath Subtree root as a <code>String</code>
+     * @return Subtree elements as an <code>ArrayList</code> (null if root
+     * element does not exist)
+     */
+    ArrayList<Element> getElements(String fullPath) {
+        String root = fullPath;
+        if (fullPath.contains("/")) {
+            root = fullPath.substring(0, fullPath.indexOf("/"));
+        }
+        Tree tree = trees.get(root);
+        if (tree == null) {
+            tree = root.equals(fullPath) ? getTree(root) : getPathTree(root, fullPath);
+        }
+        if (tree == null) {
+            return null;
+        }
+        return tree.getElements(fullPath);
+    }
+
+    /**
+     * Gets tree of a path below root, walking only that path on first use (or
+     * the tree of root, once too many paths below it were walked)
+     */
+    private Tree getPathTree(String root, String fullPath) {
+        Tree tree = pathTrees.get(fullPath);
+        if (tree == null) {
+            XSElementDecl element = getElementDecl(root);
+            if (element == null) {
+                return null;
+            }
+            AtomicInteger count = pathTreeCounts.get(root);
+            if (count == null) {
+                AtomicInteger previous = pathTreeCounts.putIfAbsent(root, count = new AtomicInteger());
+                if (previous != null) {
+                    count = previous;
+                }
+            }
+            if (count.incrementAndGet() > PATH_TREES_PER_ROOT) {
+                return getTree(root);
+            }
+            tree = new Tree(buildElements(element, fullPath));
+            Tree previous = pathTrees.putIfAbsent(fullPath, tree);
+            if (previous != null) {
+                tree = previous;
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Gets tree of a root element, building it on first use
+     *
+     * @param root Root element name as a <code>String</code>
+     * @return Tree as a <code>Tree</code> (null if root element does not
+     * exist)
+     */
+    Tree getTree(String root) {
+        Tree tree = trees.get(root);
+        if (tree == null) {
+            XSElementDecl element = getElementDecl(root);
+            if (element == null) {
+                return null;
+            }
+            tree = new Tree(buildElements(element, root));
+            Tree previous = trees.putIfAbsent(root, tree);
+            if (previous != null) {
+                tree = previous;
+            }
+            //Paths below root are now served by the root tree
+            String prefix = root + "/";
+            for (String path : pathTrees.keySet()) {
+                if (path.startsWith(prefix)) {
+                    pathTrees.remove(path);
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Gets names of all root elements, in schema order
+     */
+    List<String> getRootNames() {
+        return rootNames;
+    }
+
+    private XSSchema getUserSchema() {
+        return this.schemaSet.getSchemas().size() > 1 ? this.schemaSet.getSchema(1) : this.schemaSet.getSchema(0);
+    }
+
+    XSElementDecl getElementDecl(String root) {
+        if (this.schemaSet == null) {
+            return null;
+        } else if (this.schemaSet.getSchemas().size() > 1) {
+            return this.schemaSet.getSchema(1).getElementDecl(root);
+        } else {
+            return this.schemaSet.getSchema(0).getElementDecl(root);
+        }
+    }
+
+    /**
+     * Walks the subtree of a path (the whole tree if path is a root element)
+     */
+    private ArrayList<Element> buildElements(XSElementDecl element, String fullPath) {
+        Handlers handlers = new Handlers(fullPath, recursionDepth);
+        handlers.handleRoot(element);
+
+        return handlers.elements;
+    }
+
+    /**
+     * Elements of a tree in document order, with the end of the subtree of
+     * each element. A path is found by walking down from the first elements of
+     * the tree by name (a path may appear more than once, e.g. in a choice).
+     */
+    static class Tree {
+
+        final Element[] elements;
+        /**
+         * Index after the last element of the subtree of each element
+         */
+        private final int[] ends;
+        /**
+         * Paths of the first elements of the tree (the elements without parent)
+         */
+        private final String[] topPaths;
+
+        Tree(ArrayList<Element> elements) {
+            this.elements = elements.toArray(new Element[elements.size()]);
+            this.ends = new int[this.elements.length];
+            int[] open = new int[this.elements.length];
+            int openCount = 0;
+            for (int i = 0; i < this.elements.length; i++) {
+                int depth = this.elements[i].getDepth();
+                while (openCount > 0 && this.elements[open[openCount - 1]].getDepth() >= depth) {
+                    ends[open[--openCount]] = i;
+                }
+                open[openCount++] = i;
+            }
+            while (openCount > 0) {
+                ends[open[--openCount]] = this.elements.length;
+            }
+            ArrayList<String> tops = new ArrayList<String>();
+            for (int top = 0; top < this.elements.length; top = ends[top]) {
+                tops.add(this.elements[top].getFullPath());
+            }
+            this.topPaths = tops.toArray(new String[tops.size()]);
+        }
+
+        /**
+         * Gets subtree ranges of a path as pairs of start (inclusive) and end
+         * (exclusive) indices
+         *
+         * @param fullPath Path as a <code>String</code>
+         * @return Ranges as an <code>int[]</code> (null if path does not exist)
+         */
+        int[] getSubtrees(String fullPath) {
+            ArrayList<Integer> found = new ArrayList<Integer>();
+            int top = 0;
+            for (String topPath : topPaths) {
+                if (fullPath.equals(topPath)) {
+                    found.add(top);
+                } else if (fullPath.startsWith(topPath + "/")) {
+                    findChildren(top, fullPath.substring(topPath.length() + 1).split("/"), 0, found);
+                }
+                top = ends[top];
+            }
+            if (found.isEmpty()) {
+                return null;
+            }
+            int[] ranges = new int[found.size() * 2];
+            for (int i = 0; i < found.size(); i++) {
+                ranges[2 * i] = found.get(i);
+                ranges[2 * i + 1] = ends[found.get(i)];
+            }
+            return ranges;
+        }
+
+        private void findChildren(int parent, String[] names, int level, ArrayList<Integer> found) {
+            for (int child = parent + 1; child < ends[parent]; child = ends[child]) {
+                if (elements[child].getName().equals(names[level])) {
+                    if (level == names.length - 1) {
+                        found.add(child);
+                    } else {
+                        findChildren(child, names, level + 1, found);
+                    }
+                }
+            }
+        }
+
+        ArrayList<Element> getElements(String fullPath) {
+            int[] ranges = getSubtrees(fullPath);
+            if (ranges == null) {
+                return new ArrayList<Element>();
+            }
+            int size = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                size += ranges[i + 1] - ranges[i];
+            }
+            ArrayList<Element> result = new ArrayList<Element>(size);
+            for (int i = 0; i < ranges.length; i += 2) {
+                for (int j = ranges[i]; j < ranges[i + 1]; j++) {
+                    result.add(elements[j]);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SchemaRegistry shares SchemaFile instances, keyed by the canonical path of
+ * their xsd, so that each xsd is parsed once (together with its element trees,
+ * cached templates and compiled grammar) instead of once per new SchemaFile.
+ * At most maximumSize SchemaFiles are kept; the least recently used one is
+ * dropped when a new one is needed (callers still holding it can keep using
+ * it).
+ * <p>
+ * A SchemaFile is parsed by the first thread asking for it, other threads
+ * asking for the same xsd wait for that parse instead of parsing again. When
+ * watching is on, the directories of all files a kept xsd was parsed from
+ * (imports/includes included) are watched and a SchemaFile is reloaded when
+ * one of its files changes. Reloading swaps the new version in at once,
+ * validations already running finish with the old one. A directory is watched
+ * only while a kept SchemaFile uses it, so dropped SchemaFiles (evicted,
+ * invalidated or failed) stop its watching.
+ *
+ * @author samarita
+ */
+public class SchemaRegistry implements Closeable {
+
+    /**
+     * Default maximum number of SchemaFiles kept
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 64;
+    /**
+     * Time to wait for more changes before reloading, so that a file saved in
+     * several writes is reloaded once
+     */
+    private static final long SETTLE_MILLIS = 200;
+    private static SchemaRegistry defaultRegistry;
+    private final int maximumSize;
+    private final boolean watch;
+    private final LinkedHashMap<String, FutureTask<SchemaFile>> schemaFiles;
+    private final HashMap<Path, WatchKey> watchKeys = new HashMap<Path, WatchKey>();
+    /**
+     * How many kept SchemaFiles use each watched directory
+     */
+    private final HashMap<Path, Integer> directoryUses = new HashMap<Path, Integer>();
+    /**
+     * Watched directories of each kept SchemaFile
+     */
+    private final HashMap<String, Set<Path>> watchedBy = new HashMap<String, Set<Path>>();
+    private long hits, misses, evictions;
+    private WatchService watchService;
+    private boolean closed;
+
+    /**
+     * SchemaRegistry constructor
+     *
+     * @param maximumSize Maximum number of SchemaFiles to keep as an
+     * <code>int</code>
+     * @param watch If xsd files should be reloaded when changed
+     * <code>true</code>, else <code>false</code>
+     */
+    public SchemaRegistry(final int maximumSize, boolean watch) {
+        this.maximumSize = Math.max(1, maximumSize);
+        this.watch = watch;
+        this.schemaFiles = new LinkedHashMap<String, FutureTask<SchemaFile>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FutureTask<SchemaFile>> eldest) {
+                if (size() > SchemaRegistry.this.maximumSize) {
+                    evictions++;
+                    unwatch(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets process-wide SchemaRegistry (DEFAULT_MAXIMUM_SIZE SchemaFiles,
+     * watching on), creating it on first use
+     *
+     * @return Registry as a <code>SchemaRegistry</code>
+     */
+    public static synchronized SchemaRegistry getDefault() {
+        if (defaultRegistry == null) {
+            defaultRegistry = new SchemaRegistry(DEFAULT_MAXIMUM_SIZE, true);
+        }
+        return defaultRegistry;
+    }
+
+    /**
+     * Gets shared SchemaFile of an xsd, parsing it on first use
+     *
+     * @param xsdFile Path of xsd file as a <code>String</code>
+     * @return SchemaFile as a <code>SchemaFile</code>
+     * @throws IOException If xsd file cannot be found or parsed
+     * @throws IllegalStateException If registry is closed
+     */
+    public SchemaFile get(String xsdFile) throws IOException {
+        File file = new File(xsdFile);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(xsdFile);
+        }
+        final String path = file.getCanonicalPath();
+        FutureTask<SchemaFile> task;
+        boolean created = false;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("SchemaRegistry is closed");
+            }
+            task = schemaFiles.get(path);
+            if (task == null) {
+                misses++;
+                task = new FutureTask<SchemaFile>(new Callable<SchemaFile>() {
+                    @Override
+                    public SchemaFile call() {
+                        return new SchemaFile(path);
+                    }
+                });
+                schemaFiles.put(path, task);
+                created = true;
+            } else {
+                hits++;
+            }
+        }
+        if (created) {
+            task.run();
+        }
+        SchemaFile schemaFile;
+        try {
+            schemaFile = task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing " + path);
+        } catch (ExecutionException ex) {
+            remove(path, task);
+            throw new IOException("Cannot parse " + path, ex.getCause());
+        }
+        if (!schemaFile.isLoaded()) { //Not kept, next call parses again
+            remove(path, task);
+            throw new IOException("Cannot parse " + path);
+        }
+        if (created && watch) {
+            watch(path, schemaFile);
+        }
+        return schemaFile;
+    }
+
+    /**
+     * Drops SchemaFile of an xsd, so that it is parsed again on next use
+     *
+     * @param xsdFile Path of xsd file as a <code>String</code>
+     * @throws IOException If path cannot be resolved
+     */
+    public synchronized void invalidate(String xsdFile) throws IOException {
+        String path = new File(xsdFile).getCanonicalPath();
+        if (schemaFiles.remove(path) != null) {
+            unwatch(path);
+        }
+    }
+
+    /**
+     * Gets counters of the registry
+     *
+     * @return Counters as a <code>CacheStats</code>
+     */
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, schemaFiles.size(), maximumSize);
+    }
+
+    /**
+     * Stops watching and drops all SchemaFiles
+     */
+    @Override
+    public void close() {
+        WatchService service;
+        synchronized (this) {
+            closed = true;
+            schemaFiles.clear();
+            watchKeys.clear(); //Cancelled by closing the service
+            directoryUses.clear();
+            watchedBy.clear();
+            service = watchService;
+        }
+        if (service != null) {
+            try {
+                service.close(); //Stops the watcher thread
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized void remove(String path, FutureTask<SchemaFile> task) {
+        if (isKept(path, task)) {
+            schemaFiles.remove(path);
+            unwatch(path);
+        }
+    }
+
+    /**
+     * Checks if task is the one kept for path, without changing the least
+     * recently used order
+     */
+    private boolean isKept(String path, FutureTask<SchemaFile> task) {
+        for (Map.Entry<String, FutureTask<SchemaFile>> entry : schemaFiles.entrySet()) {
+            if (entry.getKey().equals(path)) {
+                return entry.getValue() == task;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets SchemaFiles parsed so far, by path
+     */
+    private synchronized Map<String, SchemaFile> getLoaded() {
+        LinkedHashMap<String, SchemaFile> loaded = new LinkedHashMap<String, SchemaFile>();
+        for (Map.Entry<String, FutureTask<SchemaFile>> entry : schemaFiles.entrySet()) {
+            FutureTask<SchemaFile> task = entry.getValue();
+            if (task.isDone()) {
+                try {
+                    loaded.put(entry.getKey(), task.get());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) { //Being removed by its get
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Watches directories of the files of a kept SchemaFile (again after a
+     * reload, as its files may have changed), starting the watcher thread on
+     * first use
+     */
+    private synchronized void watch(String path, SchemaFile schemaFile) {
+        if (closed || getLoaded().get(path) != schemaFile) { //Dropped meanwhile
+            return;
+        }
+        HashSet<Path> directories = new HashSet<Path>();
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread watcher = new Thread(new Watcher(watchService), "SchemaRegistry watcher");
+                watcher.setDaemon(true);
+                watcher.start();
+            }
+            for (String file : schemaFile.getSourceFiles()) {
+                Path directory = Paths.get(file).getParent();
+                if (directory != null && !directories.contains(directory)) {
+                    if (!watchKeys.containsKey(directory)) {
+                        watchKeys.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+                    }
+                    directories.add(directory);
+                    Integer uses = directoryUses.get(directory);
+                    directoryUses.put(directory, uses == null ? 1 : uses + 1);
+                }
+            }
+        } catch (IOException ex) { //SchemaFile is still served, only not reloaded
+            ex.printStackTrace();
+        }
+        release(watchedBy.put(path, directories)); //After the new ones are counted, so shared directories stay watched
+    }
+
+    /**
+     * Stops watching the directories of a dropped SchemaFile that no other
+     * kept SchemaFile uses
+     */
+    private synchronized void unwatch(String path) {
+        release(watchedBy.remove(path));
+    }
+
+    private void release(Set<Path> directories) {
+        if (directories == null) {
+            return;
+        }
+        for (Path directory : directories) {
+            int uses = directoryUses.get(directory) - 1;
+            if (uses > 0) {
+                directoryUses.put(directory, uses);
+            } else {
+                directoryUses.remove(directory);
+                WatchKey key = watchKeys.remove(directory);
+                if (key != null) {
+                    key.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets number of watched directories
+     */
+    synchronized int getWatchedDirectoryCount() {
+        return watchKeys.size();
+    }
+
+    /**
+     * Reloads SchemaFiles whose files changed, until the watch service is
+     * closed
+     */
+    private class Watcher implements Runnable {
+
+        private final WatchService service;
+
+        Watcher(WatchService service) {
+            this.service = service;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    HashSet<String> changed = new HashSet<String>();
+                    HashSet<Path> overflowed = new HashSet<Path>();
+                    WatchKey key = service.take();
+                    while (key != null) {
+                        Path directory = (Path) key.watchable();
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                overflowed.add(directory);
+                            } else {
+                                changed.add(directory.resolve((Path) event.context()).toString());
+                            }
+                        }
+                        key.reset();
+                        key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    for (Map.Entry<String, SchemaFile> entry : getLoaded().entrySet()) {
+                        SchemaFile schemaFile = entry.getValue();
+                        for (String file : schemaFile.getSourceFiles()) {
+                            if (changed.contains(file) || overflowed.contains(Paths.get(file).getParent())) {
+                                if (schemaFile.reload()) {
+                                    watch(entry.getKey(), entry.getValue()); //Imports/includes may have changed
+                                }
+                                break;
+                            }
+                        }
+                    }
+                }
+            } catch (InterruptedException ex) {
+                //Stopped
+            } catch (ClosedWatchServiceException ex) {
+                //Registry closed
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.Attributes;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SchemaResourceResolver resolves the xsd documents a SchemaFile reads (the
+ * xsd itself and its imports/includes) for both XSOM (as an EntityResolver)
+ * and the validation grammar compiler (as an LSResourceResolver), so that
+ * documents shared by several xsds are read from disk once per process.
+ * <p>
+ * Documents are looked up in a catalog first: a schema location (system id)
+ * or a namespace can be mapped to a local file, e.g. the xml.xsd of
+ * "http://www.w3.org/XML/1998/namespace". Local files (and classpath
+ * resources) are then read and their bytes cached; a cached file is read
+ * again only if its size or modification time changed. Nothing is ever read
+ * from the network: a document that is neither local nor in the catalog
+ * fails to resolve.
+ *
+ * @author samarita
+ */
+public class SchemaResourceResolver implements EntityResolver, LSResourceResolver {
+
+    private static SchemaResourceResolver defaultResolver;
+    private final ConcurrentHashMap<String, Path> systemIds = new ConcurrentHashMap<String, Path>();
+    private final ConcurrentHashMap<String, Path> namespaces = new ConcurrentHashMap<String, Path>();
+    private final ConcurrentHashMap<String, Document> documents = new ConcurrentHashMap<String, Document>();
+    private final Object statsLock = new Object();
+    private long hits, misses;
+    private volatile DOMImplementationLS domImplementation;
+
+    /**
+     * Gets process-wide SchemaResourceResolver, used by SchemaFiles created
+     * without one
+     *
+     * @return Resolver as a <code>SchemaResourceResolver</code>
+     */
+    public static synchronized SchemaResourceResolver getDefault() {
+        if (defaultResolver == null) {
+            defaultResolver = new SchemaResourceResolver();
+        }
+        return defaultResolver;
+    }
+
+    /**
+     * Maps a schema location to a local file
+     *
+     * @param systemId Schema location (absolute uri) as a <code>String</code>
+     * @param localFile Local file as a <code>Path</code>
+     */
+    public void addSystemId(String systemId, Path localFile) {
+        systemIds.put(systemId, localFile.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Maps a namespace to a local file, used for imports whose location is
+     * missing or not local
+     *
+     * @param namespace Namespace uri as a <code>String</code>
+     * @param localFile Local file as a <code>Path</code>
+     */
+    public void addNamespace(String namespace, Path localFile) {
+        namespaces.put(namespace, localFile.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Adds the entries of an OASIS XML catalog: system entries (systemId,
+     * uri) map schema locations and uri entries (name, uri) map namespaces.
+     * Relative uris are resolved against the catalog file. Other entries are
+     * ignored.
+     *
+     * @param catalogFile Catalog file as a <code>Path</code>
+     * @throws IOException If catalog cannot be read
+     * @throws SAXException If catalog is not well-formed
+     */
+    public void addCatalog(Path catalogFile) throws IOException, SAXException {
+        final URI base = catalogFile.toAbsolutePath().toUri();
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            factory.newSAXParser().parse(catalogFile.toFile(), new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                    String target = attributes.getValue("uri");
+                    if (target == null) {
+                        return;
+                    }
+                    Path file = Paths.get(base.resolve(target));
+                    if (localName.equals("system") && attributes.getValue("systemId") != null) {
+                        addSystemId(attributes.getValue("systemId"), file);
+                    } else if (localName.equals("uri") && attributes.getValue("name") != null) {
+                        addNamespace(attributes.getValue("name"), file);
+                    }
+                }
+
+                @Override
+                public InputSource resolveEntity(String publicId, String systemId) {
+                    return new InputSource(new ByteArrayInputStream(new byte[0])); //No catalog DTD from the network
+                }
+            });
+        } catch (ParserConfigurationException ex) {
+            throw new SAXException(ex);
+        }
+    }
+
+    /**
+     * Drops all cached documents
+     */
+    public void clear() {
+        documents.clear();
+    }
+
+    /**
+     * Gets counters of the document cache
+     *
+     * @return Cache counters as a <code>CacheStats</code> (maximum size is -1,
+     * the cache is not bounded)
+     */
+    public CacheStats getStats() {
+        synchronized (statsLock) {
+            return new CacheStats(hits, misses, 0, documents.size(), -1);
+        }
+    }
+
+    /**
+     * Resolves the xsd of a SchemaFile
+     *
+     * @param location Path or uri of xsd as a <code>String</code>
+     * @return Xsd as an <code>InputSource</code>
+     * @throws IOException If xsd cannot be read
+     */
+    InputSource resolveDocument(String location) throws IOException {
+        return resolveEntity(null, toUri(location).toString());
+    }
+
+    /**
+     * Gets local uri of a path or uri
+     */
+    static URI toUri(String location) {
+        try {
+            URI uri = new URI(location);
+            if (uri.getScheme() != null && uri.getScheme().length() > 1) { //Not a windows drive
+                return uri;
+            }
+        } catch (URISyntaxException ex) { //A file path
+        }
+        return new File(location).getAbsoluteFile().toURI();
+    }
+
+    /**
+     * Resolves a document for XSOM, which passes the namespace of an import
+     * as public id and an absolute schema location as system id
+     *
+     * @param publicId Namespace or public id as a <code>String</code>
+     * @param systemId Absolute schema location as a <code>String</code>
+     * @return Document as an <code>InputSource</code> (null if none)
+     * @throws IOException If document cannot be read or is not available
+     * locally
+     */
+    @Override
+    public InputSource resolveEntity(String publicId, String systemId) throws IOException {
+        Resolved resolved = resolve(publicId, systemId, null);
+        if (resolved == null) {
+            return null;
+        }
+        InputSource source = new InputSource(new ByteArrayInputStream(resolved.bytes));
+        source.setSystemId(resolved.systemId);
+        source.setPublicId(publicId);
+        return source;
+    }
+
+    /**
+     * Resolves a document for the validation grammar compiler. A document that
+     * cannot be read is returned as an input failing on read, so that it is
+     * reported as an unreadable document.
+     */
+    @Override
+    public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
+        LSInput input = getDOMImplementation().createLSInput();
+        input.setPublicId(publicId);
+        try {
+            Resolved resolved = resolve(namespaceURI, systemId, baseURI);
+            if (resolved == null) {
+                return null;
+            }
+            input.setByteStream(new ByteArrayInputStream(resolved.bytes));
+            input.setSystemId(resolved.systemId);
+        } catch (final IOException ex) {
+            input.setSystemId(systemId);
+            input.setByteStream(new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw ex;
+                }
+            });
+        }
+        return input;
+    }
+
+    /**
+     * Resolves a document: catalog system id, catalog namespace if the
+     * location is missing or not local, then local file
+     *
+     * @return Document (null if neither location nor namespace are known)
+     */
+    private Resolved resolve(String namespace, String systemId, String baseURI) throws IOException {
+        URI uri = null;
+        if (systemId != null) {
+            Path mapped = systemIds.get(systemId);
+            if (mapped != null) {
+                return read(mapped.toUri());
+            }
+            try {
+                uri = baseURI == null ? new URI(systemId) : new URI(baseURI).resolve(new URI(systemId));
+            } catch (URISyntaxException ex) {
+                throw new IOException("Invalid schema location " + systemId, ex);
+            }
+            mapped = systemIds.get(uri.toString());
+            if (mapped != null) {
+                return read(mapped.toUri());
+            }
+        }
+        if (namespace != null && (uri == null || !isLocal(uri))) {
+            Path mapped = namespaces.get(namespace);
+            if (mapped != null) {
+                return read(mapped.toUri());
+            }
+        }
+        if (uri == null) {
+            return null;
+        } else if (!isLocal(uri)) {
+            throw new IOException("Not in schema catalog and network access is disabled: " + uri);
+        }
+        return read(uri);
+    }
+
+    private static boolean isLocal(URI uri) {
+        return "file".equals(uri.getScheme()) || "jar".equals(uri.getScheme());
+    }
+
+    /**
+     * Reads a local document, from cache if unchanged
+     */
+    private Resolved read(URI uri) throws IOException {
+        String key = uri.normalize().toString();
+        if ("file".equals(uri.getScheme())) {
+            Path file = Paths.get(uri);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            long size = Files.size(file);
+            Document cached = documents.get(key);
+            if (cached != null && cached.modified == modified && cached.bytes.length == size) {
+                hit(true);
+                return new Resolved(key, cached.bytes);
+            }
+            hit(false);
+            byte[] bytes = Files.readAllBytes(file);
+            documents.put(key, new Document(modified, bytes));
+            return new Resolved(key, bytes);
+        }
+        Document cached = documents.get(key); //Classpath resources do not change
+        if (cached != null) {
+            hit(true);
+            return new Resolved(key, cached.bytes);
+        }
+        hit(false);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = uri.toURL().openStream()) {
+            byte[] buffer = new byte[8192];
+            for (int count = in.read(buffer); count != -1; count = in.read(buffer)) {
+                bytes.write(buffer, 0, count);
+            }
+        }
+        documents.put(key, new Document(0, bytes.toByteArray()));
+        return new Resolved(key, bytes.toByteArray());
+    }
+
+    private void hit(boolean hit) {
+        synchronized (statsLock) {
+            if (hit) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+    }
+
+    private DOMImplementationLS getDOMImplementation() {
+        DOMImplementationLS implementation = domImplementation;
+        if (implementation == null) {
+            try {
+                implementation = (DOMImplementationLS) DocumentBuilderFactory.newInstance().newDocumentBuilder().getDOMImplementation();
+            } catch (ParserConfigurationException ex) {
+                throw new IllegalStateException(ex);
+            }
+            domImplementation = implementation;
+        }
+        return implementation;
+    }
+
+    private static class Document {
+
+        final long modified;
+        final byte[] bytes;
+
+        Document(long modified, byte[] bytes) {
+            this.modified = modified;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Resolved {
+
+        final String systemId;
+        final byte[] bytes;
+
+        Resolved(String systemId, byte[] bytes) {
+            this.systemId = systemId;
+            this.bytes = bytes;
+        }
+    }
+}
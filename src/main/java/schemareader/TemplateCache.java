@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of generated xml templates, keyed by xpath and mode. Least
+ * recently used templates are dropped when the cache is full. A cache belongs
+ * to a single SchemaModel, so templates of a reloaded schema are never mixed
+ * with the old ones.
+ *
+ * @author samarita
+ */
+class TemplateCache {
+
+    private final int maximumSize;
+    private final LinkedHashMap<Key, String> templates;
+    private long hits, misses, evictions;
+
+    TemplateCache(final int maximumSize) {
+        this.maximumSize = Math.max(0, maximumSize);
+        this.templates = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                if (size() > TemplateCache.this.maximumSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets a cached template
+     *
+     * @param xpath Subtree root as a <code>String</code>
+     * @param mode Creation mode as a <code>String</code>
+     * @return Template as a <code>String</code> (null if not cached)
+     */
+    synchronized String get(String xpath, String mode) {
+        String template = templates.get(new Key(xpath, mode));
+        if (template == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return template;
+    }
+
+    synchronized void put(String xpath, String mode, String template) {
+        if (maximumSize > 0) {
+            templates.put(new Key(xpath, mode), template);
+        }
+    }
+
+    synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, templates.size(), maximumSize);
+    }
+
+    private static final class Key {
+
+        private final String xpath, mode;
+
+        Key(String xpath, String mode) {
+            this.xpath = xpath;
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return xpath.equals(other.xpath) && mode.equals(other.mode);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * xpath.hashCode() + mode.hashCode();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.IOException;
+import java.util.List;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * TemplateWriter writes the xml template of a subtree in one pass over its
+ * elements (in document order), keeping the open elements in a stack. Nothing
+ * is allocated per element besides what the output itself needs.
+ * <p>
+ * Modes: "maximum" writes the first branch of each choice, "minimum" also
+ * leaves out optional elements and "medium" writes all choice branches but
+ * leaves out optional elements of the admin part. Elements left out are left
+ * out together with their subtree.
+ *
+ * @param <E> Exception thrown by the output
+ * @author samarita
+ */
+abstract class TemplateWriter<E extends Exception> {
+
+    private Element[] open = new Element[16];
+    private int openCount;
+
+    abstract void startElement(Element el) throws E;
+
+    abstract void endElement(Element el) throws E;
+
+    /**
+     * Writes template
+     *
+     * @param elements Subtree elements as a <code>List</code>
+     * @param mode Creation mode as a <code>String</code> ("minimum","medium" or
+     * "maximum")
+     * @throws E If output fails
+     */
+    final void write(List<Element> elements, String mode) throws E {
+        boolean maximum = mode.equals("maximum");
+        boolean minimum = mode.equals("minimum");
+        boolean medium = mode.equals("medium");
+        boolean isRoot = true;
+        int skippedDepth = 0; //Depth of last skipped element, its subtree is skipped too
+        openCount = 0;
+        for (int i = 0; i < elements.size(); i++) {
+            Element el = elements.get(i);
+            int depth = el.getDepth();
+            if (skippedDepth > 0 && depth > skippedDepth) {
+                continue;
+            }
+            skippedDepth = 0;
+            if (!isRoot && isLeftOut(el, maximum, minimum, medium)) {
+                skippedDepth = depth;
+                continue;
+            }
+            isRoot = false;
+            while (openCount > 0 && open[openCount - 1].getDepth() >= depth) {
+                endElement(open[--openCount]);
+            }
+            startElement(el);
+            if (openCount == open.length) {
+                Element[] more = new Element[open.length * 2];
+                System.arraycopy(open, 0, more, 0, openCount);
+                open = more;
+            }
+            open[openCount++] = el;
+        }
+        while (openCount > 0) {
+            endElement(open[--openCount]);
+        }
+    }
+
+    private static boolean isLeftOut(Element el, boolean maximum, boolean minimum, boolean medium) {
+        if (minimum && el.isOptional()) {
+            return true;
+        }
+        if (!maximum && !minimum && el.isOptional() && !el.getName().equals("admin") && el.pathContains("admin")) {
+            return true;
+        }
+        return !medium && el.isChoiceAlternative();
+    }
+
+    /**
+     * Writes template as text (attributes in single quotes, empty elements as
+     * start and end tag)
+     */
+    static final class ToAppendable extends TemplateWriter<IOException> {
+
+        private final Appendable out;
+
+        ToAppendable(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        void startElement(Element el) throws IOException {
+            out.append('<').append(el.getName());
+            for (AttributeInfo attr : el.getAttributeInfos()) {
+                if (attr.isRequired()) {
+                    out.append(' ').append(attr.getName()).append("='");
+                    appendEscaped(attr.getTemplateValue());
+                    out.append('\'');
+                }
+            }
+            out.append('>');
+        }
+
+        @Override
+        void endElement(Element el) throws IOException {
+            out.append("</").append(el.getName()).append('>');
+        }
+
+        private void appendEscaped(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '&') {
+                    out.append("&amp;");
+                } else if (c == '<') {
+                    out.append("&lt;");
+                } else if (c == '\'') {
+                    out.append("&apos;");
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes template as StAX events
+     */
+    static final class ToStream extends TemplateWriter<XMLStreamException> {
+
+        private final XMLStreamWriter out;
+
+        ToStream(XMLStreamWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        void startElement(Element el) throws XMLStreamException {
+            out.writeStartElement(el.getName());
+            for (AttributeInfo attr : el.getAttributeInfos()) {
+                if (attr.isRequired()) {
+                    out.writeAttribute(attr.getName(), attr.getTemplateValue());
+                }
+            }
+        }
+
+        @Override
+        void endElement(Element el) throws XMLStreamException {
+            out.writeEndElement();
+        }
+    }
+}
@@ -28,6 +28,9 @@
 package schemareader;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -38,6 +41,32 @@ import java.util.regex.PatternSyntaxException;
  */
 public class Utils {
 
+    private static final int MAX_CACHED_PATTERNS = 256;
+    /**
+     * Compiled patterns, keyed by flags and regular expression (LRU)
+     */
+    private static final Map<String, Pattern> patterns = Collections.synchronizedMap(new LinkedHashMap<String, Pattern>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > MAX_CACHED_PATTERNS;
+        }
+    });
+
+    /**
+     * Callback for regular expression matches
+     */
+    public interface MatchHandler {
+
+        /**
+         * Handles a match
+         *
+         * @param match Match found as a <code>String</code>
+         * @return To keep searching <code>true</code>, to stop
+         * <code>false</code>
+         */
+        boolean onMatch(String match);
+    }
+
     /**
      * Finds matches given a regular expression
      * @param regexp Regular expression as a <code>String</code>
@@ -47,23 +76,52 @@ public class Utils {
      */
     public ArrayList<String> findReg(String regexp, String text, int flags) {
 
-        ArrayList<String> results = new ArrayList();
-        Pattern pattern;
-        try {
-            pattern = Pattern.compile(regexp, flags);
-            Matcher matcher = pattern.matcher(text);
-            boolean found = false;
+        final ArrayList<String> results = new ArrayList();
+        findReg(regexp, text, flags, new MatchHandler() {
+            public boolean onMatch(String match) {
+                results.add(match);
+                return true;
+            }
+        });
+        return results;
 
+    }
 
-            while ((found = matcher.find())) {
-                results.add(matcher.group());
+    /**
+     * Finds matches given a regular expression, passing each one to a handler
+     * instead of collecting them
+     * @param regexp Regular expression as a <code>String</code>
+     * @param text Content to search as a <code>CharSequence</code>
+     * @param flags Pattern flags as a <code>int</code>
+     * @param handler Match handler as a <code>MatchHandler</code>
+     */
+    public void findReg(String regexp, CharSequence text, int flags, MatchHandler handler) {
+        try {
+            Matcher matcher = getPattern(regexp, flags).matcher(text);
+            while (matcher.find()) {
+                if (!handler.onMatch(matcher.group())) {
+                    break;
+                }
             }
         } catch (PatternSyntaxException ex) {
             System.out.println(ex.getDescription());
             System.out.println(ex.getMessage());
         }
+    }
 
-        return results;
-
+    /**
+     * Gets a compiled pattern from cache, compiling it on first use
+     * @param regexp Regular expression as a <code>String</code>
+     * @param flags Pattern flags as a <code>int</code>
+     * @return Compiled pattern as a <code>Pattern</code>
+     */
+    static Pattern getPattern(String regexp, int flags) {
+        String key = flags + ":" + regexp;
+        Pattern pattern = patterns.get(key);
+        if (pattern == null) {
+            pattern = Pattern.compile(regexp, flags);
+            patterns.put(key, pattern);
+        }
+        return pattern;
     }
 }
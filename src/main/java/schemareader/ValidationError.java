@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+/**
+ * ValidationError is a single problem reported while validating an xml
+ * against a SchemaFile.
+ *
+ * @author samarita
+ */
+public class ValidationError {
+
+    /**
+     * Error severity, as reported by the xml parser
+     */
+    public enum Severity {
+
+        WARNING, ERROR, FATAL
+    }
+
+    private final Severity severity;
+    private final int line, column;
+    private final String message;
+    private final String systemId;
+    private final String elementPath;
+    private final String context;
+
+    ValidationError(Severity severity, int line, int column, String message, String systemId, String elementPath, String context) {
+        this.severity = severity;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+        this.systemId = systemId;
+        this.elementPath = elementPath;
+        this.context = context;
+    }
+
+    /**
+     * Gets severity
+     *
+     * @return Severity as a <code>Severity</code>
+     */
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    /**
+     * Gets line number
+     *
+     * @return Line as an <code>int</code> (-1 if unknown)
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Gets column number
+     *
+     * @return Column as an <code>int</code> (-1 if unknown)
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Gets message
+     *
+     * @return Message as a <code>String</code>
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets xml system id
+     *
+     * @return System id as a <code>String</code> (null if unknown)
+     */
+    public String getSystemId() {
+        return systemId;
+    }
+
+    /**
+     * Gets path of the element being validated when the error occured
+     *
+     * @return Element path as a <code>String</code> (e.g. "root/a/b")
+     */
+    public String getElementPath() {
+        return elementPath;
+    }
+
+    /**
+     * Gets the part of the xml with the error, captured while validating
+     *
+     * @return Part with error as a <code>String</code> (null if not available)
+     */
+    public String getContext() {
+        return context;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder output = new StringBuilder();
+        output.append("XML File: ").append(systemId);
+        output.append("\nLine: ").append(line);
+        output.append("\nColumn: ").append(column);
+        output.append("\nMessage: ").append(message);
+        return output.toString();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ValidationResult holds the outcome of validating an xml against a
+ * SchemaFile: the errors found (up to the requested maximum) and whether
+ * validation stopped early because that maximum was reached. Messages are
+ * localized only when the result is rendered.
+ *
+ * @author samarita
+ */
+public class ValidationResult {
+
+    private final List<ValidationError> errors;
+    private final boolean truncated;
+    private final String documentName;
+    private final String readFailure;
+
+    ValidationResult(List<ValidationError> errors, boolean truncated, String documentName, String readFailure) {
+        this.errors = Collections.unmodifiableList(errors);
+        this.truncated = truncated;
+        this.documentName = documentName;
+        this.readFailure = readFailure;
+    }
+
+    /**
+     * Checks if xml is valid
+     *
+     * @return If no errors (warnings excluded) were found <code>true</code>,
+     * else <code>false</code>
+     */
+    public boolean isValid() {
+        return readFailure == null && getErrorCount() == 0;
+    }
+
+    /**
+     * Gets all reported problems, warnings included, in document order
+     *
+     * @return Errors as a <code>List</code>
+     */
+    public List<ValidationError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Gets number of errors (warnings excluded)
+     *
+     * @return Number of errors as an <code>int</code>
+     */
+    public int getErrorCount() {
+        int count = 0;
+        for (ValidationError error : errors) {
+            if (error.getSeverity() != ValidationError.Severity.WARNING) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks if validation stopped before the end of the xml, either because
+     * the maximum number of errors was reached or because of a fatal error
+     *
+     * @return If stopped early <code>true</code>, else <code>false</code>
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Gets the reason the xml could not be read, if any
+     *
+     * @return Read failure message as a <code>String</code> (null if xml was
+     * read)
+     */
+    public String getReadFailure() {
+        return readFailure;
+    }
+
+    /**
+     * Gets all reported problems as a log
+     *
+     * @return Log as a <code>String</code>
+     */
+    public String getLog() {
+        return toLog(errors);
+    }
+
+    static String toLog(List<ValidationError> errors) {
+        StringBuilder log = new StringBuilder();
+        for (ValidationError error : errors) {
+            if (log.length() > 0) {
+                log.append("\n");
+            }
+            log.append(error);
+        }
+        return log.toString();
+    }
+
+    private String getLog(boolean gr) {
+        StringBuilder log = new StringBuilder();
+        for (ValidationError error : errors) {
+            if (log.length() > 0) {
+                log.append("\n");
+            }
+            log.append(error);
+            if (error.getContext() != null) {
+                log.append(gr ? "\nΠροβληματικό τμήμα: " : "\nPart with error: ").append(error.getContext());
+            }
+        }
+        return log.toString();
+    }
+
+    /**
+     * Renders a validation message
+     *
+     * @param lang Message language as a <code>String</code> ("gr","en" for now)
+     * @return Validation message as a <code>String</code>
+     */
+    public String render(String lang) {
+        boolean gr = "gr".equals(lang);
+        if (documentName == null) {
+            if (readFailure != null) {
+                return gr ? "Το xml δεν μπορεί να διαβαστεί: " + readFailure : "Xml could not be read: " + readFailure;
+            } else if (isValid()) {
+                return gr ? "Το xml είναι έγκυρο." : "Valid xml.";
+            } else {
+                return (gr ? "Το xml δεν είναι έγκυρο. Πιο αναλυτικά:\n" : "Invalid xml:\n") + getLog(gr);
+            }
+        } else {
+            if (readFailure != null) {
+                return gr ? "Το αρχείο " + documentName + " δεν μπορεί να διαβαστεί: " + readFailure
+                        : "File " + documentName + " could not be read: " + readFailure;
+            } else if (isValid()) {
+                return gr ? "Το αρχείο " + documentName + " είναι έγκυρο." : "File " + documentName + " is valid.";
+            } else {
+                return (gr ? "Το αρχείο " + documentName + " δεν είναι έγκυρο. Πιο αναλυτικά:\n"
+                        : "File " + documentName + " is not valid:\n") + getLog(gr);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return render("en");
+    }
+}
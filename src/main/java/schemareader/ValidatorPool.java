@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Bounded pool of validators (and their error handlers) created from the same
+ * compiled Schema. A validator is not thread-safe, so each one is used by a
+ * single thread between borrow and release. When the pool is empty a new
+ * validator is created instead of blocking, and validators released to a full
+ * pool are simply dropped.
+ *
+ * @author samarita
+ */
+class ValidatorPool {
+
+    private final ArrayBlockingQueue<PooledValidator> idle;
+
+    ValidatorPool(int capacity) {
+        this.idle = new ArrayBlockingQueue<PooledValidator>(Math.max(1, capacity));
+    }
+
+    /**
+     * Gets an idle validator or creates a new one
+     *
+     * @param schema Compiled schema as a <code>Schema</code>
+     * @return Validator ready to use as a <code>PooledValidator</code>
+     * @throws SAXException If a new validator cannot be created
+     */
+    PooledValidator borrow(Schema schema) throws SAXException {
+        PooledValidator pooled = idle.poll();
+        if (pooled == null || pooled.schema != schema) {
+            pooled = new PooledValidator(schema);
+        }
+        return pooled;
+    }
+
+    /**
+     * Resets a validator and gives it back to the pool
+     *
+     * @param pooled Validator to release as a <code>PooledValidator</code>
+     */
+    void release(PooledValidator pooled) {
+        pooled.reset();
+        idle.offer(pooled);
+    }
+
+    /**
+     * Validator stack of a single thread: a namespace aware XMLReader feeding
+     * a ValidatorHandler through an ElementPathTracker, the error handler they
+     * report to and the buffer of recent xml lines used for error context.
+     */
+    static class PooledValidator {
+
+        final Schema schema;
+        final XMLReader reader;
+        final ValidatorHandler validatorHandler;
+        final ElementPathTracker pathTracker = new ElementPathTracker();
+        final MyErrorHandler errorHandler = new MyErrorHandler();
+        final RecentLines recentLines = new RecentLines();
+
+        PooledValidator(Schema schema) throws SAXException {
+            this.schema = schema;
+            this.validatorHandler = schema.newValidatorHandler();
+            SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+            parserFactory.setNamespaceAware(true);
+            try {
+                this.reader = parserFactory.newSAXParser().getXMLReader();
+            } catch (ParserConfigurationException ex) {
+                throw new SAXException(ex);
+            }
+            pathTracker.setContentHandler(validatorHandler);
+            reader.setContentHandler(pathTracker);
+            reader.setErrorHandler(errorHandler);
+            validatorHandler.setErrorHandler(errorHandler);
+            errorHandler.setPathTracker(pathTracker);
+            errorHandler.setRecentLines(recentLines);
+        }
+
+        /**
+         * Validates xml, stopping after maxErrors errors
+         *
+         * @param xml Xml as an <code>InputSource</code>
+         * @param maxErrors Maximum number of errors as an <code>int</code>
+         * @throws IOException If xml cannot be read
+         */
+        void validate(InputSource xml, int maxErrors) throws IOException {
+            errorHandler.setMaxErrors(maxErrors);
+            if (xml.getCharacterStream() != null) {
+                recentLines.reset(false);
+                xml.setCharacterStream(new RecentLines.CapturingReader(xml.getCharacterStream(), recentLines));
+            } else if (xml.getByteStream() != null) {
+                recentLines.reset(true);
+                xml.setByteStream(new RecentLines.CapturingInputStream(xml.getByteStream(), recentLines));
+            }
+            try {
+                reader.parse(xml);
+            } catch (SAXException ex) {
+                if (!errorHandler.isStopped()) { //Not reported through the error handler
+                    throw new IOException(ex);
+                }
+            }
+        }
+
+        void reset() {
+            errorHandler.reset();
+            pathTracker.reset();
+        }
+    }
+}
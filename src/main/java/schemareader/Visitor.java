@@ -29,31 +29,121 @@ package schemareader;
 
 import com.sun.xml.xsom.XSAttributeDecl;
 import com.sun.xml.xsom.XSAttributeUse;
-import java.util.Vector;
-
 import com.sun.xml.xsom.XSComplexType;
 import com.sun.xml.xsom.XSElementDecl;
-import com.sun.xml.xsom.XSFacet;
 import com.sun.xml.xsom.XSModelGroup;
 import com.sun.xml.xsom.XSModelGroupDecl;
 import com.sun.xml.xsom.XSParticle;
-import com.sun.xml.xsom.XSRestrictionSimpleType;
 import com.sun.xml.xsom.XSSimpleType;
+import com.sun.xml.xsom.XSSchema;
+import com.sun.xml.xsom.XSSchemaSet;
 import com.sun.xml.xsom.XSTerm;
-import com.sun.xml.xsom.parser.XSOMParser;
-import java.util.Collection;
-import java.util.Iterator;
+import com.sun.xml.xsom.XSType;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 /**
- * Visitor class
+ * Visitor dumps the schema structure (elements with their occurences and
+ * types, attributes, model groups and simple type restrictions) of a path of
+ * a SchemaFile. It uses the XSOM result of the SchemaFile, so the xsd is not
+ * parsed again, and it keeps no state between calls, so a single Visitor can
+ * be used by many threads.
+ * <p>
+ * Navigation descends only along the segments of the requested path and stops
+ * once the subtree of the requested element has been reported (the first one,
+ * if the path appears more than once). Recursive elements are expanded as
+ * many times as the recursion depth of the SchemaFile (see
+ * Element.isRecursive); deeper occurences are reported but not expanded.
+ *
  * @author samarita
  */
 public class Visitor {
 
-    static String nodeXpath = "";
-    static boolean nodeFound = false;
+    /**
+     * Receives the schema structure found by navigate, in document order.
+     * Depth is the nesting level of model groups.
+     */
+    public interface Handler {
+
+        /**
+         * Element on the path
+         *
+         * @param path Element path as a <code>String</code>
+         * @param occurs Occurences as a <code>String</code> (empty if unknown)
+         * @param typeName Base type name as a <code>String</code>
+         * @param complex If element has complex type <code>true</code>, else
+         * <code>false</code>
+         * @param depth Depth as an <code>int</code>
+         * @throws IOException If output fails
+         */
+        void element(String path, String occurs, String typeName, boolean complex, int depth) throws IOException;
+
+        /**
+         * Attribute of the last complex type element
+         *
+         * @param name Attribute name as a <code>String</code>
+         * @param required If attribute is required <code>true</code>, else
+         * <code>false</code>
+         * @param depth Depth as an <code>int</code>
+         * @throws IOException If output fails
+         */
+        void attribute(String name, boolean required, int depth) throws IOException;
+
+        /**
+         * Restrictions of the last element, if it has a simple type
+         *
+         * @param restriction Restrictions as a <code>SimpleTypeRestriction</code>
+         * @param depth Depth as an <code>int</code>
+         * @throws IOException If output fails
+         */
+        void restriction(SimpleTypeRestriction restriction, int depth) throws IOException;
+
+        /**
+         * Start of a sequence, choice or all
+         *
+         * @param compositor Compositor as a <code>String</code>
+         * @param occurs Occurences as a <code>String</code>
+         * @param depth Depth as an <code>int</code>
+         * @throws IOException If output fails
+         */
+        void startGroup(String compositor, String occurs, int depth) throws IOException;
+
+        /**
+         * End of a sequence, choice or all
+         *
+         * @param compositor Compositor as a <code>String</code>
+         * @param depth Depth as an <code>int</code>
+         * @throws IOException If output fails
+         */
+        void endGroup(String compositor, int depth) throws IOException;
+
+        /**
+         * Reference to a named group (followed by its model group)
+         *
+         * @param name Group name as a <code>String</code>
+         * @param occurs Occurences as a <code>String</code>
+         * @param depth Depth as an <code>int</code>
+         * @throws IOException If output fails
+         */
+        void groupDecl(String name, String occurs, int depth) throws IOException;
+    }
+
+    private final XSSchemaSet schemaSet;
+    private final int recursionDepth;
 
-    
+    /**
+     * Visitor constructor
+     *
+     * @param schemaFile Schema file as a <code>SchemaFile</code> (parsed if
+     * not parsed yet)
+     * @throws IllegalStateException If xsd cannot be parsed
+     */
+    public Visitor(SchemaFile schemaFile) {
+        this.schemaSet = schemaFile.getSchemaSet();
+        this.recursionDepth = Math.max(1, schemaFile.getModel().getRecursionDepth());
+    }
 
     /**
      *
@@ -130,164 +220,255 @@ public class Visitor {
         }
     }
 
-    private static void initRestrictions(XSSimpleType xsSimpleType, SimpleTypeRestriction simpleTypeRestriction) {
-        XSRestrictionSimpleType restriction = xsSimpleType.asRestriction();
-        if (restriction != null) {
-            Vector<String> enumeration = new Vector<String>();
-            Vector<String> pattern = new Vector<String>();
-
-            for (XSFacet facet : restriction.getDeclaredFacets()) {
-                if (facet.getName().equals(XSFacet.FACET_ENUMERATION)) {
-                    enumeration.add(facet.getValue().value);
-                }
-                if (facet.getName().equals(XSFacet.FACET_MAXINCLUSIVE)) {
-                    simpleTypeRestriction.maxValue = facet.getValue().value;
-                }
-                if (facet.getName().equals(XSFacet.FACET_MININCLUSIVE)) {
-                    simpleTypeRestriction.minValue = facet.getValue().value;
-                }
-                if (facet.getName().equals(XSFacet.FACET_MAXEXCLUSIVE)) {
-                    simpleTypeRestriction.maxValue = String.valueOf(Integer.parseInt(facet.getValue().value) - 1);
-                }
-                if (facet.getName().equals(XSFacet.FACET_MINEXCLUSIVE)) {
-                    simpleTypeRestriction.minValue = String.valueOf(Integer.parseInt(facet.getValue().value) + 1);
-                }
-                if (facet.getName().equals(XSFacet.FACET_LENGTH)) {
-                    simpleTypeRestriction.length = facet.getValue().value;
-                }
-                if (facet.getName().equals(XSFacet.FACET_MAXLENGTH)) {
-                    simpleTypeRestriction.maxLength = facet.getValue().value;
-                }
-                if (facet.getName().equals(XSFacet.FACET_MINLENGTH)) {
-                    simpleTypeRestriction.minLength = facet.getValue().value;
-                }
-                if (facet.getName().equals(XSFacet.FACET_PATTERN)) {
-                    pattern.add(facet.getValue().value);
-                }
-                if (facet.getName().equals(XSFacet.FACET_TOTALDIGITS)) {
-                    simpleTypeRestriction.totalDigits = facet.getValue().value;
-                }
-            }
-            if (enumeration.size() > 0) {
-                simpleTypeRestriction.enumeration = enumeration.toArray(new String[]{});
-            }
-            if (pattern.size() > 0) {
-                simpleTypeRestriction.pattern = pattern.toArray(new String[]{});
-            }
+    /**
+     * Gets restrictions of a simple type, read as for Element.getRestrictionInfo
+     */
+    private static SimpleTypeRestriction getRestriction(XSSimpleType xsSimpleType) {
+        Restrictions restrictions = Handlers.initRestrictions(xsSimpleType);
+        SimpleTypeRestriction simpleTypeRestriction = new SimpleTypeRestriction();
+        if (!restrictions.getEnumerations().isEmpty()) {
+            simpleTypeRestriction.enumeration = restrictions.getEnumerations().toArray(new String[]{});
+        }
+        if (!restrictions.getPatterns().isEmpty()) {
+            simpleTypeRestriction.pattern = restrictions.getPatterns().toArray(new String[]{});
         }
+        simpleTypeRestriction.minValue = restrictions.getMinValue();
+        simpleTypeRestriction.maxValue = restrictions.getMaxValue();
+        simpleTypeRestriction.length = toValue(restrictions.getLength());
+        simpleTypeRestriction.minLength = toValue(restrictions.getMinLength());
+        simpleTypeRestriction.maxLength = toValue(restrictions.getMaxLength());
+        simpleTypeRestriction.totalDigits = toValue(restrictions.getTotalDigits());
+        return simpleTypeRestriction;
     }
 
-    private static void printParticle(XSParticle particle, String occurs, String absPath, String indent) {
-        if (nodeFound) {
-            occurs = "  MinOccurs = " + particle.getMinOccurs() + ", MaxOccurs = " + particle.getMaxOccurs();
-        }
-        XSTerm term = particle.getTerm();
-        if (term.isModelGroup()) {
-            printGroup(term.asModelGroup(), occurs, absPath, indent);
-        } else if (term.isModelGroupDecl()) {
-            printGroupDecl(term.asModelGroupDecl(), occurs, absPath, indent);
-        } else if (term.isElementDecl()) {
-            printElement(term.asElementDecl(), occurs, absPath, indent);
-        } else {
+    private static String toValue(int value) {
+        return value == -1 ? null : String.valueOf(value);
+    }
 
+    /**
+     * Gets schema dump of a path below a root element. Each call keeps its own
+     * position in the schema, so calls may run concurrently.
+     *
+     * @param rootElement Root element name as a <code>String</code>
+     * @param pathToNode Path of node to dump as a <code>String</code> (e.g.
+     * "/root/a/b", empty for the whole tree)
+     * @param output Output as an <code>Appendable</code>
+     * @return If root element exists <code>true</code>, else
+     * <code>false</code>
+     * @throws IOException If output fails
+     */
+    public boolean navigate(String rootElement, String pathToNode, Appendable output) throws IOException {
+        return navigate(rootElement, pathToNode, new TextHandler(output));
+    }
+
+    /**
+     * Reports schema structure of a path below a root element to a Handler.
+     * Each call keeps its own position in the schema, so calls may run
+     * concurrently.
+     *
+     * @param rootElement Root element name as a <code>String</code>
+     * @param pathToNode Path of node to report as a <code>String</code> (e.g.
+     * "/root/a/b", empty for the whole tree)
+     * @param handler Handler as a <code>Handler</code>
+     * @return If root element exists <code>true</code>, else
+     * <code>false</code>
+     * @throws IOException If handler fails
+     */
+    public boolean navigate(String rootElement, String pathToNode, Handler handler) throws IOException {
+        XSElementDecl root = getUserSchema().getElementDecl(rootElement);
+        if (root == null) {
+            return false;
         }
+        new Navigation(pathToNode, handler, recursionDepth).visitElement(root, "", "", 0);
+        return true;
+    }
+
+    private XSSchema getUserSchema() {
+        return this.schemaSet.getSchemas().size() > 1 ? this.schemaSet.getSchema(1) : this.schemaSet.getSchema(0);
     }
 
-    private static void printGroup(XSModelGroup modelGroup, String occurs, String absPath, String indent) {
-        if (nodeFound) {
-            System.out.println(indent + "[Start of " + modelGroup.getCompositor() + occurs + "]");
+    /**
+     * Dumps schema structure of a path below a root element to System.out
+     *
+     * @param xsdFile Xsd file path as a <code>String</code>
+     * @param rootElement Root element name as a <code>String</code>
+     * @param pathToNode Path of node to dump as a <code>String</code>
+     */
+    public static void xsomNavigate(String xsdFile, String rootElement, String pathToNode) {
+        try {
+            new Visitor(new SchemaFile(xsdFile)).navigate(rootElement, pathToNode, System.out);
+        } catch (Exception exp) {
+            exp.printStackTrace(System.out);
         }
-        for (XSParticle particle : modelGroup.getChildren()) {
+    }
 
-            printParticle(particle, occurs, absPath, indent + "\t");
+    /**
+     * Position of a single navigate call: the names of the elements being
+     * walked and how many times each element name and type appears among them
+     */
+    private static class Navigation {
+
+        private final String[] target;
+        private final Handler handler;
+        private final int recursionDepth;
+        private final ArrayList<String> segments = new ArrayList<String>();
+        private final HashMap<String, IdentityHashMap<XSType, Integer>> ancestors = new HashMap<String, IdentityHashMap<XSType, Integer>>();
+        private boolean done = false;
+
+        Navigation(String pathToNode, Handler handler, int recursionDepth) {
+            ArrayList<String> names = new ArrayList<String>();
+            for (String name : pathToNode.split("/")) {
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+            this.target = names.toArray(new String[names.size()]);
+            this.handler = handler;
+            this.recursionDepth = recursionDepth;
         }
-        if (nodeFound) {
-            System.out.println(indent + "[End of " + modelGroup.getCompositor() + "]");
+
+        /**
+         * If walking the content of the requested element (or below it)
+         */
+        private boolean inSubtree() {
+            return segments.size() >= target.length;
         }
 
-    }
+        private void visitParticle(XSParticle particle, String absPath, int depth) throws IOException {
+            String occurs = "  MinOccurs = " + particle.getMinOccurs() + ", MaxOccurs = " + particle.getMaxOccurs();
+            XSTerm term = particle.getTerm();
+            if (term.isModelGroup()) {
+                visitGroup(term.asModelGroup(), occurs, absPath, depth);
+            } else if (term.isModelGroupDecl()) {
+                visitGroupDecl(term.asModelGroupDecl(), occurs, absPath, depth);
+            } else if (term.isElementDecl()) {
+                visitElement(term.asElementDecl(), occurs, absPath, depth);
+            }
+        }
 
-    private static void printGroupDecl(XSModelGroupDecl modelGroupDecl, String occurs, String absPath, String indent) {
-        if (nodeFound) {
-            System.out.println(indent + "[Group " + modelGroupDecl.getName() + occurs + "]");
+        private void visitGroup(XSModelGroup modelGroup, String occurs, String absPath, int depth) throws IOException {
+            boolean report = inSubtree();
+            if (report) {
+                handler.startGroup(modelGroup.getCompositor().toString(), occurs, depth);
+            }
+            for (XSParticle particle : modelGroup.getChildren()) {
+                if (done) {
+                    return;
+                }
+                visitParticle(particle, absPath, depth + 1);
+            }
+            if (report) {
+                handler.endGroup(modelGroup.getCompositor().toString(), depth);
+            }
         }
-        printGroup(modelGroupDecl.getModelGroup(), occurs, absPath, indent);
-    }
 
-    private static void printAttributes(XSComplexType complexType,  String indent) {
-        Collection<? extends XSAttributeUse> c = complexType.getAttributeUses();
-        Iterator<? extends XSAttributeUse> i = c.iterator();
-        while (i.hasNext()) {
-            // i.next is attributeUse
-            XSAttributeUse attUse = i.next();
-
-            XSAttributeDecl attributeDecl = attUse.getDecl();
-            String use = "";
-            if (attUse.isRequired()) {
-                use = "Required";
-            } else {
-                use = "Optional";
+        private void visitGroupDecl(XSModelGroupDecl modelGroupDecl, String occurs, String absPath, int depth) throws IOException {
+            if (inSubtree()) {
+                handler.groupDecl(modelGroupDecl.getName(), occurs, depth);
             }
+            visitGroup(modelGroupDecl.getModelGroup(), occurs, absPath, depth);
+        }
 
-            if (nodeFound) {
-                System.out.print(indent + "[Attribute " + attributeDecl.getName() + "   Use " + use + "]\n");
+        private void visitAttributes(XSComplexType complexType, int depth) throws IOException {
+            for (XSAttributeUse attUse : complexType.getAttributeUses()) {
+                handler.attribute(attUse.getDecl().getName(), attUse.isRequired(), depth);
             }
         }
 
+        void visitElement(XSElementDecl element, String occurs, String absPath, int depth) throws IOException {
+            String name = element.getName();
+            int level = segments.size();
+            if (done || level < target.length && !name.equals(target[level])) {
+                return; //Not on requested path
+            }
+            absPath += "/" + name;
+            boolean report = level >= target.length - 1;
+            XSType type = element.getType();
+            if (report) {
+                handler.element(absPath, occurs, type.getBaseType().getName(), type.isComplexType(), depth);
+            }
+            if (type.isComplexType()) {
+                IdentityHashMap<XSType, Integer> types = ancestors.get(name);
+                if (types == null) {
+                    types = new IdentityHashMap<XSType, Integer>();
+                    ancestors.put(name, types);
+                }
+                Integer seen = types.get(type);
+                int count = seen == null ? 0 : seen;
+                if (report) {
+                    visitAttributes(type.asComplexType(), depth);
+                }
+                XSParticle particle = type.asComplexType().getContentType().asParticle();
+                if (particle != null && count < recursionDepth) {
+                    types.put(type, count + 1);
+                    segments.add(name);
+                    visitParticle(particle, absPath, depth);
+                    segments.remove(segments.size() - 1);
+                    if (count == 0) {
+                        types.remove(type);
+                    } else {
+                        types.put(type, count);
+                    }
+                }
+            } else if (report) {
+                handler.restriction(getRestriction(type.asSimpleType()), depth);
+            }
+            if (level == target.length - 1) {
+                done = true; //Requested subtree reported
+            }
+        }
     }
 
-    private static void printComplexType(XSComplexType complexType, String occurs, String absPath, String indent) {
-        if (nodeFound) {
-        System.out.println();
+    /**
+     * Handler writing the schema dump as text, one tab of indentation per
+     * level
+     */
+    private static class TextHandler implements Handler {
+
+        private final Appendable out;
+
+        TextHandler(Appendable out) {
+            this.out = out;
         }
-        printAttributes(complexType,  indent);
-        XSParticle particle = complexType.getContentType().asParticle();
-        if (particle != null) {
-            printParticle(particle, occurs, absPath, indent);
+
+        private Appendable indent(int depth) throws IOException {
+            for (int i = 0; i < depth; i++) {
+                out.append('\t');
+            }
+            return out;
         }
 
-    }
+        @Override
+        public void element(String path, String occurs, String typeName, boolean complex, int depth) throws IOException {
+            indent(depth).append("[Element ").append(path).append("   ").append(occurs).append("] of type [").append(typeName).append("]");
+            if (complex) {
+                out.append('\n');
+            }
+        }
 
-    private static void printSimpleType(XSSimpleType simpleType, String occurs, String absPath, String indent) {
-        SimpleTypeRestriction restriction = new SimpleTypeRestriction();
-        initRestrictions(simpleType, restriction);
-        System.out.println(restriction.toString());
-    }
+        @Override
+        public void attribute(String name, boolean required, int depth) throws IOException {
+            indent(depth).append("[Attribute ").append(name).append("   Use ").append(required ? "Required" : "Optional").append("]\n");
+        }
 
-    private static void printElement(XSElementDecl element, String occurs, String absPath, String indent) {
-        absPath += "/" + element.getName();
-        if (absPath.contains(nodeXpath)) {
-            nodeFound = true;
-        } else {
-            nodeFound = false;
+        @Override
+        public void restriction(SimpleTypeRestriction restriction, int depth) throws IOException {
+            out.append(restriction.toString()).append('\n');
         }
-        if (nodeFound) {
-            System.out.print(indent + "[Element " + absPath + "   " + occurs + "] of type [" + element.getType().getBaseType().getName() + "]");
+
+        @Override
+        public void startGroup(String compositor, String occurs, int depth) throws IOException {
+            indent(depth).append("[Start of ").append(compositor).append(occurs).append("]\n");
         }
-        if (element.getType().isComplexType()) {
-            printComplexType(element.getType().asComplexType(), occurs, absPath, indent);
-        } else {
-            printSimpleType(element.getType().asSimpleType(), occurs, absPath, indent);
+
+        @Override
+        public void endGroup(String compositor, int depth) throws IOException {
+            indent(depth).append("[End of ").append(compositor).append("]\n");
         }
-    }
 
-    /**
-     *
-     * @param xsdFile
-     * @param rootElement
-     * @param pathToNode
-     */
-    public static void xsomNavigate(String xsdFile, String rootElement, String pathToNode) {
-        String occurs = "";
-        String absPath = "";
-        String indent = "";
-        nodeXpath = pathToNode;
-        try {
-            XSOMParser parser = new XSOMParser();
-            parser.parse(xsdFile);
-            printElement(parser.getResult().getSchema(1).getElementDecl(rootElement), occurs, absPath, indent);
-        } catch (Exception exp) {
-            exp.printStackTrace(System.out);
+        @Override
+        public void groupDecl(String name, String occurs, int depth) throws IOException {
+            indent(depth).append("[Group ").append(name).append(occurs).append("]\n");
         }
     }
 
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that "minimum" and "maximum" templates keep only the first branch of
+ * each choice (with its subtree) and "medium" templates keep all branches
+ *
+ * @author samarita
+ */
+public class ChoiceTest {
+
+    private static final String MINIMUM = "<Record><id></id><name></name><from></from><to></to></Record>";
+    private static final String MEDIUM = "<Record><id></id><name></name><alias><first></first><last></last></alias><code></code>"
+            + "<note></note><from></from><to></to><period><year></year><century></century></period></Record>";
+    private static final String MAXIMUM = "<Record><id></id><name></name><note></note><from></from><to></to></Record>";
+
+    @Test
+    public void notFirstBranchesAreMarked() throws Exception {
+        SchemaFile schemaFile = new SchemaFile(ElementTreeTest.path("choice.xsd"));
+        List<String> alternatives = new ArrayList<String>();
+        for (Element el : schemaFile.getElements("Record")) {
+            if (el.isChoiceAlternative()) {
+                alternatives.add(el.getFullPath());
+            }
+        }
+        assertEquals("[Record/alias, Record/code, Record/period, Record/period/century]", alternatives.toString());
+    }
+
+    @Test
+    public void templatesKeepFirstBranch() throws Exception {
+        SchemaFile schemaFile = new SchemaFile(ElementTreeTest.path("choice.xsd"));
+        assertEquals(MINIMUM, schemaFile.createXMLSubtree("Record", "minimum"));
+        assertEquals(MEDIUM, schemaFile.createXMLSubtree("Record", "medium"));
+        assertEquals(MAXIMUM, schemaFile.createXMLSubtree("Record", "maximum"));
+    }
+
+    @Test
+    public void streamedTemplatesKeepFirstBranch() throws Exception {
+        SchemaFile schemaFile = new SchemaFile(ElementTreeTest.path("choice.xsd"));
+        String[] expected = {MINIMUM, MEDIUM, MAXIMUM};
+        for (int i = 0; i < expected.length; i++) {
+            StringBuilder text = new StringBuilder();
+            schemaFile.createXMLSubtree("Record", ElementTreeTest.MODES[i], text);
+            assertEquals(expected[i], text.toString());
+            StringWriter events = new StringWriter();
+            XMLStreamWriter out = XMLOutputFactory.newInstance().createXMLStreamWriter(events);
+            schemaFile.createXMLSubtree("Record", ElementTreeTest.MODES[i], out);
+            out.close();
+            assertEquals(expected[i], events.toString().replaceAll("<(\\w+)/>", "<$1></$1>"));
+        }
+    }
+
+    @Test
+    public void subtreeRootIsKeptButNotItsAlternatives() throws Exception {
+        SchemaFile schemaFile = new SchemaFile(ElementTreeTest.path("choice.xsd"));
+        assertEquals("<period><year></year></period>", schemaFile.createXMLSubtree("Record/period", "minimum"));
+        assertEquals("<period><year></year><century></century></period>", schemaFile.createXMLSubtree("Record/period", "medium"));
+        assertEquals("<period><year></year></period>", schemaFile.createXMLSubtree("Record/period", "maximum"));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks element trees and xml templates of shared and mutually recursive
+ * types against expected output (person-depth1.txt, person-depth2.txt)
+ *
+ * @author samarita
+ */
+public class ElementTreeTest {
+
+    static final String[] MODES = {"minimum", "medium", "maximum"};
+
+    @Test
+    public void depth1MatchesFixture() throws Exception {
+        assertEquals(resource("person-depth1.txt"), describeAll(new SchemaFile(path("person.xsd"), 1, 1)));
+    }
+
+    @Test
+    public void depth2MatchesFixture() throws Exception {
+        assertEquals(resource("person-depth2.txt"), describeAll(new SchemaFile(path("person.xsd"), 1, 2)));
+    }
+
+    @Test
+    public void sharedTypeIsExpandedAlike() throws Exception {
+        for (int depth = 1; depth <= 2; depth++) {
+            SchemaFile schemaFile = new SchemaFile(path("person.xsd"), 1, depth);
+            String deathDate = describe(schemaFile, "Person/deathDate").replace("Person/deathDate", "");
+            assertEquals(deathDate, describe(schemaFile, "Person/x/deathDate").replace("Person/x/deathDate", ""));
+            String tree = describe(schemaFile, "Person/tree").replace("Person/tree", "");
+            assertEquals(tree, describe(schemaFile, "Person/x/tree").replace("Person/x/tree", ""));
+        }
+    }
+
+    @Test
+    public void subtreeIsPartOfRootTree() throws Exception {
+        SchemaFile schemaFile = new SchemaFile(path("person.xsd"), 1, 2);
+        String root = describe(schemaFile, "Person").replace("  ", "");
+        for (String path : new String[]{"Person/birthDate", "Person/tree/child", "Person/x"}) {
+            assertTrue(path, root.contains(describe(schemaFile, path).replace("  ", "")));
+        }
+    }
+
+    @Test
+    public void streamedTemplateEqualsCachedTemplate() throws Exception {
+        SchemaFile schemaFile = new SchemaFile(path("person.xsd"), 1, 2);
+        for (String mode : MODES) {
+            StringBuilder streamed = new StringBuilder();
+            schemaFile.createXMLSubtree("Person", mode, streamed);
+            assertEquals(mode, schemaFile.createXMLSubtree("Person", mode), streamed.toString());
+        }
+        assertEquals(0, schemaFile.getTemplateCacheStats().getHits());
+        assertEquals(MODES.length, schemaFile.getTemplateCacheStats().getMisses());
+    }
+
+    /**
+     * Describes element tree and templates of all root elements
+     */
+    static String describeAll(SchemaFile schemaFile) {
+        StringBuilder output = new StringBuilder();
+        for (String root : schemaFile.getElements()) {
+            output.append(describe(schemaFile, root));
+            for (String mode : MODES) {
+                output.append(mode).append(": ").append(schemaFile.createXMLSubtree(root, mode)).append('\n');
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Describes element tree of a subtree, one element per line indented by
+     * depth below subtree root
+     */
+    static String describe(SchemaFile schemaFile, String fullPath) {
+        StringBuilder output = new StringBuilder();
+        List<Element> elements = schemaFile.getElements(fullPath);
+        int top = elements.get(0).getDepth();
+        for (Element el : elements) {
+            for (int i = top; i < el.getDepth(); i++) {
+                output.append("  ");
+            }
+            output.append(el.getFullPath()).append(' ').append(el.getType())
+                    .append(" [").append(el.getMinOccurs()).append("..").append(el.getMaxOccurs()).append(']');
+            if (el.isChoiceAlternative()) {
+                output.append(" choice");
+            }
+            if (el.isRecursive()) {
+                output.append(" recursive");
+            }
+            output.append('\n');
+        }
+        return output.toString();
+    }
+
+    static String path(String resource) throws URISyntaxException {
+        return new File(ElementTreeTest.class.getResource(resource).toURI()).getAbsolutePath();
+    }
+
+    static String resource(String resource) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = ElementTreeTest.class.getResourceAsStream(resource)) {
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        return bytes.toString("UTF-8").replace("\r\n", "\n");
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that xsds shared by many SchemaFiles are read from disk once
+ *
+ * @author samarita
+ */
+public class SchemaResourceResolverTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int SCHEMAS = 40;
+    private static final int INCLUDES = 15;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsEachIncludeOnce() throws Exception {
+        StringBuilder includes = new StringBuilder();
+        StringBuilder refs = new StringBuilder();
+        StringBuilder parts = new StringBuilder();
+        for (int i = 0; i < INCLUDES; i++) {
+            write("part" + i + ".xsd", "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+                    + "<xs:element name='part" + i + "' type='xs:string'/></xs:schema>");
+            includes.append("<xs:include schemaLocation='part").append(i).append(".xsd'/>");
+            refs.append("<xs:element ref='part").append(i).append("'/>");
+            parts.append("<part").append(i).append(">text</part").append(i).append('>');
+        }
+        SchemaResourceResolver resolver = new SchemaResourceResolver();
+        List<SchemaFile> schemaFiles = new ArrayList<SchemaFile>();
+        for (int i = 0; i < SCHEMAS; i++) {
+            File xsd = write("doc" + i + ".xsd", "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>" + includes
+                    + "<xs:element name='doc" + i + "'><xs:complexType><xs:sequence>" + refs
+                    + "</xs:sequence></xs:complexType></xs:element></xs:schema>");
+            schemaFiles.add(new SchemaFile(xsd.getAbsolutePath(), 1, 1, 10, false, resolver));
+        }
+        for (int i = 0; i < SCHEMAS; i++) {
+            SchemaFile schemaFile = schemaFiles.get(i);
+            assertEquals(INCLUDES + 1, schemaFile.getElements("doc" + i).size());
+            assertTrue(schemaFile.validate("<doc" + i + ">" + parts + "</doc" + i + ">"));
+            schemaFile.createXMLSubtree("doc" + i, "maximum");
+        }
+
+        CacheStats stats = resolver.getStats();
+        assertEquals(SCHEMAS + INCLUDES, stats.getMisses());
+        assertEquals(SCHEMAS + INCLUDES, stats.getSize());
+        assertTrue(stats.getHits() >= (SCHEMAS - 1) * INCLUDES);
+    }
+
+    private File write(String name, String content) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(UTF8));
+        return file;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012-2015 Institute of Computer Science,
+ * Foundation for Research and Technology - Hellas
+ *
+ * Licensed under the EUPL, Version 1.1 or - as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and limitations
+ * under the Licence.
+ *
+ * Contact:  POBox 1385, Heraklio Crete, GR-700 13 GREECE
+ * Tel:+30-2810-391632
+ * Fax: +30-2810-391638
+ * E-mail: isl@ics.forth.gr
+ * http://www.ics.forth.gr/isl
+ *
+ * Authors : Georgios Samaritakis, Konstantina Konsolaki.
+ *
+ * This file is part of the SchemaReader project.
+ */
+package schemareader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a saved snapshot loads back the same element model and that
+ * truncated, stale or foreign snapshots are rejected
+ *
+ * @author samarita
+ */
+public class SnapshotTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadsSameModel() throws Exception {
+        for (String xsd : new String[]{"person.xsd", "choice.xsd"}) {
+            for (int depth = 1; depth <= 2; depth++) {
+                String xsdFile = ElementTreeTest.path(xsd);
+                SchemaFile parsed = new SchemaFile(xsdFile, 1, depth);
+                Path snapshot = folder.getRoot().toPath().resolve(xsd + depth + ".snapshot");
+                parsed.saveSnapshot(snapshot);
+
+                SchemaFile loaded = new SchemaFile(xsdFile, 1, depth, 10, true);
+                assertTrue(xsd, loaded.loadSnapshot(snapshot));
+                assertEquals(parsed.getElements(), loaded.getElements());
+                assertEquals(ElementTreeTest.describeAll(parsed), ElementTreeTest.describeAll(loaded));
+                for (String root : parsed.getElements()) {
+                    for (Element el : parsed.getElements(root)) {
+                        String path = el.getFullPath();
+                        assertEquals(path, ElementTreeTest.describe(parsed, path), ElementTreeTest.describe(loaded, path));
+                        assertEquals(path, parsed.getRecursivePaths(path), loaded.getRecursivePaths(path));
+                        assertEquals(path, parsed.createLabelsAndLinksFile(root, path, "en"), loaded.createLabelsAndLinksFile(root, path, "en"));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedSnapshot() throws Exception {
+        String xsdFile = ElementTreeTest.path("person.xsd");
+        Path snapshot = folder.getRoot().toPath().resolve("person.snapshot");
+        new SchemaFile(xsdFile).saveSnapshot(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        for (int length : new int[]{0, 16, bytes.length / 2, bytes.length - 1}) {
+            Path truncated = folder.getRoot().toPath().resolve("truncated" + length);
+            Files.write(truncated, Arrays.copyOf(bytes, length));
+            assertFalse("length " + length, new SchemaFile(xsdFile, true).loadSnapshot(truncated));
+        }
+        assertFalse(new SchemaFile(xsdFile, true).loadSnapshot(folder.getRoot().toPath().resolve("missing")));
+        assertTrue(new SchemaFile(xsdFile, true).loadSnapshot(snapshot));
+    }
+
+    @Test
+    public void rejectsSnapshotOfOtherXsdOrDepth() throws Exception {
+        Path snapshot = folder.getRoot().toPath().resolve("choice.snapshot");
+        new SchemaFile(ElementTreeTest.path("choice.xsd")).saveSnapshot(snapshot);
+        assertFalse(new SchemaFile(ElementTreeTest.path("person.xsd"), true).loadSnapshot(snapshot));
+        assertFalse(new SchemaFile(ElementTreeTest.path("choice.xsd"), 1, 2, 10, true).loadSnapshot(snapshot));
+        assertTrue(new SchemaFile(ElementTreeTest.path("choice.xsd"), true).loadSnapshot(snapshot));
+    }
+
+    @Test
+    public void rejectsSnapshotAfterIncludeChanged() throws Exception {
+        File main = write("main.xsd", "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'><xs:include schemaLocation='included.xsd'/>"
+                + "<xs:element name='main'><xs:complexType><xs:sequence><xs:element ref='included'/></xs:sequence></xs:complexType></xs:element></xs:schema>");
+        write("included.xsd", "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'><xs:element name='included' type='xs:string'/></xs:schema>");
+        Path snapshot = folder.getRoot().toPath().resolve("main.snapshot");
+        new SchemaFile(main.getAbsolutePath(), new SchemaResourceResolver()).saveSnapshot(snapshot);
+        assertTrue(new SchemaFile(main.getAbsolutePath(), true).loadSnapshot(snapshot));
+
+        write("included.xsd", "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'><xs:element name='included' type='xs:int'/></xs:schema>");
+        assertFalse(new SchemaFile(main.getAbsolutePath(), true).loadSnapshot(snapshot));
+
+        SchemaFile changed = new SchemaFile(main.getAbsolutePath(), new SchemaResourceResolver());
+        changed.saveSnapshot(snapshot);
+        SchemaFile loaded = new SchemaFile(main.getAbsolutePath(), true);
+        assertTrue(loaded.loadSnapshot(snapshot));
+        assertEquals("int", loaded.getElements("main").get(1).getType());
+    }
+
+    @Test(expected = IOException.class)
+    public void refusesToSaveAfterXsdChanged() throws Exception {
+        File xsd = write("changing.xsd", "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'><xs:element name='a' type='xs:string'/></xs:schema>");
+        SchemaFile schemaFile = new SchemaFile(xsd.getAbsolutePath(), new SchemaResourceResolver());
+        write("changing.xsd", "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'><xs:element name='b' type='xs:string'/></xs:schema>");
+        schemaFile.saveSnapshot(folder.getRoot().toPath().resolve("changing.snapshot"));
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(UTF8));
+        return file;
+    }
+}